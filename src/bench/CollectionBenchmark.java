@@ -0,0 +1,403 @@
+package bench;
+
+import collections.MyList;
+import collections.MyMap;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Random;
+
+// MyList and MyMap side by side with ArrayList and HashMap, per operation and size:
+//   java -Xmx8g -cp out bench.CollectionBenchmark [size...] [-only name]
+// Sizes may be written as 1e5; the default is 1e3 .. 1e7, and 1e7 needs several GB of heap.
+//
+// Each round builds its structure untimed and then times one pass over n elements (or
+// SHIFT_OPS indexed inserts/removes). Warmup rounds run first in the same JVM, the median
+// ns/op of the measured rounds is reported, and every result feeds a sink so the JIT
+// cannot drop the work. Keys are boxed once and shared by both implementations.
+public class CollectionBenchmark {
+    private static final int[] DEFAULT_SIZES = {1_000, 10_000, 100_000, 1_000_000, 10_000_000};
+    // each indexed insert/remove shifts up to n elements, so fewer of them are timed
+    private static final int SHIFT_OPS = 1_000;
+    private static final long SEED = 42;
+
+    private static volatile long sink;
+
+    // one timed pass; returns the number of operations it did
+    private interface Round {
+        long run();
+    }
+
+    private interface Setup {
+        Round prepare(Data data, int n);
+    }
+
+    private static final class Operation {
+        final String name;
+        final Setup mine;
+        final Setup jdk;
+
+        Operation(String name, Setup mine, Setup jdk) {
+            this.name = name;
+            this.mine = mine;
+            this.jdk = jdk;
+        }
+    }
+
+    private static final class Data {
+        final Long[] longs;
+        final String[] strings;
+        final int[] order;      // a permutation of 0..n-1
+        final int[] positions;  // non-negative random ints
+
+        Data(int n) {
+            Random random = new Random(SEED ^ n);
+            longs = new Long[n];
+            strings = new String[n];
+            order = new int[n];
+            positions = new int[n];
+            for (int i = 0; i < n; i++) {
+                long key = random.nextLong();
+                longs[i] = key;
+                strings[i] = Long.toString(key, 36);
+                order[i] = i;
+                positions[i] = random.nextInt(Integer.MAX_VALUE);
+            }
+            for (int i = n - 1; i > 0; i--) {
+                int j = random.nextInt(i + 1);
+                int t = order[i];
+                order[i] = order[j];
+                order[j] = t;
+            }
+        }
+    }
+
+    public static void main(String[] args) {
+        int[] sizes = DEFAULT_SIZES;
+        String only = null;
+        int[] parsed = new int[args.length];
+        int count = 0;
+        for (int i = 0; i < args.length; i++) {
+            if ("-only".equals(args[i]) && i + 1 < args.length) {
+                only = args[++i];
+            } else {
+                parsed[count++] = (int) Double.parseDouble(args[i]);
+            }
+        }
+        if (count > 0) sizes = Arrays.copyOf(parsed, count);
+
+        System.out.printf("%s %s, max heap %d MB%n", System.getProperty("java.vm.name"),
+                System.getProperty("java.version"), Runtime.getRuntime().maxMemory() >> 20);
+        System.out.printf("%-26s %10s %14s %14s %8s%n", "operation", "size", "My* ns/op", "JDK ns/op", "ratio");
+        for (int n : sizes) {
+            Data data = new Data(n);
+            int rounds = Math.max(3, Math.min(200, 10_000_000 / n));
+            int warmup = Math.max(2, rounds / 2);
+            for (Operation op : operations()) {
+                if (only != null && !op.name.contains(only)) continue;
+                double mine = measure(op.mine, data, n, warmup, rounds);
+                double jdk = measure(op.jdk, data, n, warmup, rounds);
+                System.out.printf("%-26s %10d %14.2f %14.2f %8.2f%n", op.name, n, mine, jdk, mine / jdk);
+            }
+        }
+        System.out.println("(sink " + sink + ")");
+    }
+
+    private static double measure(Setup setup, Data data, int n, int warmup, int rounds) {
+        System.gc();
+        double[] samples = new double[rounds];
+        for (int r = -warmup; r < rounds; r++) {
+            Round round = setup.prepare(data, n);
+            long start = System.nanoTime();
+            long ops = round.run();
+            long elapsed = System.nanoTime() - start;
+            if (r >= 0) samples[r] = (double) elapsed / ops;
+        }
+        Arrays.sort(samples);
+        return samples[rounds / 2];
+    }
+
+    private static Operation[] operations() {
+        return new Operation[] {
+                new Operation("list.add",
+                        (d, n) -> () -> {
+                            MyList<Long> list = new MyList<>();
+                            for (int i = 0; i < n; i++) list.add(d.longs[i]);
+                            sink += list.size();
+                            return n;
+                        },
+                        (d, n) -> () -> {
+                            ArrayList<Long> list = new ArrayList<>();
+                            for (int i = 0; i < n; i++) list.add(d.longs[i]);
+                            sink += list.size();
+                            return n;
+                        }),
+                new Operation("list.get",
+                        (d, n) -> {
+                            MyList<Long> list = myList(d, n);
+                            return () -> {
+                                long h = 0;
+                                for (int i = 0; i < n; i++) h += list.get(d.order[i]);
+                                sink += h;
+                                return n;
+                            };
+                        },
+                        (d, n) -> {
+                            ArrayList<Long> list = arrayList(d, n);
+                            return () -> {
+                                long h = 0;
+                                for (int i = 0; i < n; i++) h += list.get(d.order[i]);
+                                sink += h;
+                                return n;
+                            };
+                        }),
+                new Operation("list.insert(index)",
+                        (d, n) -> {
+                            MyList<Long> list = myList(d, n);
+                            return () -> {
+                                int ops = Math.min(n, SHIFT_OPS);
+                                for (int i = 0; i < ops; i++) list.add(d.positions[i] % (list.size() + 1), d.longs[i]);
+                                sink += list.size();
+                                return ops;
+                            };
+                        },
+                        (d, n) -> {
+                            ArrayList<Long> list = arrayList(d, n);
+                            return () -> {
+                                int ops = Math.min(n, SHIFT_OPS);
+                                for (int i = 0; i < ops; i++) list.add(d.positions[i] % (list.size() + 1), d.longs[i]);
+                                sink += list.size();
+                                return ops;
+                            };
+                        }),
+                new Operation("list.remove(index)",
+                        (d, n) -> {
+                            MyList<Long> list = myList(d, n);
+                            return () -> {
+                                int ops = Math.min(n, SHIFT_OPS);
+                                long h = 0;
+                                for (int i = 0; i < ops; i++) h += list.remove(d.positions[i] % list.size());
+                                sink += h;
+                                return ops;
+                            };
+                        },
+                        (d, n) -> {
+                            ArrayList<Long> list = arrayList(d, n);
+                            return () -> {
+                                int ops = Math.min(n, SHIFT_OPS);
+                                long h = 0;
+                                for (int i = 0; i < ops; i++) h += list.remove(d.positions[i] % list.size());
+                                sink += h;
+                                return ops;
+                            };
+                        }),
+                new Operation("list.iterate",
+                        (d, n) -> {
+                            MyList<Long> list = myList(d, n);
+                            return () -> {
+                                long h = 0;
+                                Iterator<Long> it = list.iterator();
+                                while (it.hasNext()) h += it.next();
+                                sink += h;
+                                return n;
+                            };
+                        },
+                        (d, n) -> {
+                            ArrayList<Long> list = arrayList(d, n);
+                            return () -> {
+                                long h = 0;
+                                for (Long x : list) h += x;
+                                sink += h;
+                                return n;
+                            };
+                        }),
+                new Operation("map.put(Long)",
+                        (d, n) -> () -> {
+                            MyMap<Long, Long> map = new MyMap<>(capacityFor(n), 0.75f);
+                            for (int i = 0; i < n; i++) map.put(d.longs[i], d.longs[i]);
+                            sink += map.size();
+                            return n;
+                        },
+                        (d, n) -> () -> {
+                            HashMap<Long, Long> map = new HashMap<>(capacityFor(n));
+                            for (int i = 0; i < n; i++) map.put(d.longs[i], d.longs[i]);
+                            sink += map.size();
+                            return n;
+                        }),
+                new Operation("map.get(Long)",
+                        (d, n) -> {
+                            MyMap<Long, Long> map = myMap(d.longs, n);
+                            return () -> {
+                                long h = 0;
+                                for (int i = 0; i < n; i++) h += map.get(d.longs[d.order[i]]);
+                                sink += h;
+                                return n;
+                            };
+                        },
+                        (d, n) -> {
+                            HashMap<Long, Long> map = hashMap(d.longs, n);
+                            return () -> {
+                                long h = 0;
+                                for (int i = 0; i < n; i++) h += map.get(d.longs[d.order[i]]);
+                                sink += h;
+                                return n;
+                            };
+                        }),
+                new Operation("map.remove(Long)",
+                        (d, n) -> {
+                            MyMap<Long, Long> map = myMap(d.longs, n);
+                            return () -> {
+                                long h = 0;
+                                for (int i = 0; i < n; i++) h += map.remove(d.longs[d.order[i]]);
+                                sink += h;
+                                return n;
+                            };
+                        },
+                        (d, n) -> {
+                            HashMap<Long, Long> map = hashMap(d.longs, n);
+                            return () -> {
+                                long h = 0;
+                                for (int i = 0; i < n; i++) h += map.remove(d.longs[d.order[i]]);
+                                sink += h;
+                                return n;
+                            };
+                        }),
+                new Operation("map.put(String)",
+                        (d, n) -> () -> {
+                            MyMap<String, String> map = new MyMap<>(capacityFor(n), 0.75f);
+                            for (int i = 0; i < n; i++) map.put(d.strings[i], d.strings[i]);
+                            sink += map.size();
+                            return n;
+                        },
+                        (d, n) -> () -> {
+                            HashMap<String, String> map = new HashMap<>(capacityFor(n));
+                            for (int i = 0; i < n; i++) map.put(d.strings[i], d.strings[i]);
+                            sink += map.size();
+                            return n;
+                        }),
+                new Operation("map.get(String)",
+                        (d, n) -> {
+                            MyMap<String, String> map = myMap(d.strings, n);
+                            return () -> {
+                                long h = 0;
+                                for (int i = 0; i < n; i++) h += map.get(d.strings[d.order[i]]).length();
+                                sink += h;
+                                return n;
+                            };
+                        },
+                        (d, n) -> {
+                            HashMap<String, String> map = hashMap(d.strings, n);
+                            return () -> {
+                                long h = 0;
+                                for (int i = 0; i < n; i++) h += map.get(d.strings[d.order[i]]).length();
+                                sink += h;
+                                return n;
+                            };
+                        }),
+                new Operation("map.remove(String)",
+                        (d, n) -> {
+                            MyMap<String, String> map = myMap(d.strings, n);
+                            return () -> {
+                                long h = 0;
+                                for (int i = 0; i < n; i++) h += map.remove(d.strings[d.order[i]]).length();
+                                sink += h;
+                                return n;
+                            };
+                        },
+                        (d, n) -> {
+                            HashMap<String, String> map = hashMap(d.strings, n);
+                            return () -> {
+                                long h = 0;
+                                for (int i = 0; i < n; i++) h += map.remove(d.strings[d.order[i]]).length();
+                                sink += h;
+                                return n;
+                            };
+                        }),
+                // from the default capacity, so the table doubles log2(n / 12) times
+                new Operation("map.grow(Long)",
+                        (d, n) -> () -> {
+                            MyMap<Long, Long> map = new MyMap<>();
+                            for (int i = 0; i < n; i++) map.put(d.longs[i], d.longs[i]);
+                            sink += map.size();
+                            return n;
+                        },
+                        (d, n) -> () -> {
+                            HashMap<Long, Long> map = new HashMap<>();
+                            for (int i = 0; i < n; i++) map.put(d.longs[i], d.longs[i]);
+                            sink += map.size();
+                            return n;
+                        }),
+                new Operation("map.grow(Long) incremental",
+                        (d, n) -> () -> {
+                            MyMap<Long, Long> map = new MyMap<>(16, 0.75f, true);
+                            for (int i = 0; i < n; i++) map.put(d.longs[i], d.longs[i]);
+                            sink += map.size();
+                            return n;
+                        },
+                        (d, n) -> () -> {
+                            HashMap<Long, Long> map = new HashMap<>();
+                            for (int i = 0; i < n; i++) map.put(d.longs[i], d.longs[i]);
+                            sink += map.size();
+                            return n;
+                        }),
+                // filled to n and then cut to one entry in eight: the table keeps its size
+                new Operation("map.iterate(sparse)",
+                        (d, n) -> {
+                            MyMap<Long, Long> map = myMap(d.longs, n);
+                            for (int i = 0; i < n; i++) {
+                                if ((i & 7) != 0) map.remove(d.longs[i]);
+                            }
+                            return () -> {
+                                long h = 0;
+                                Iterator<Map.Entry<Long, Long>> it = map.entryIterator();
+                                while (it.hasNext()) h += it.next().getValue();
+                                sink += h;
+                                return n;
+                            };
+                        },
+                        (d, n) -> {
+                            HashMap<Long, Long> map = hashMap(d.longs, n);
+                            for (int i = 0; i < n; i++) {
+                                if ((i & 7) != 0) map.remove(d.longs[i]);
+                            }
+                            return () -> {
+                                long h = 0;
+                                for (Map.Entry<Long, Long> e : map.entrySet()) h += e.getValue();
+                                sink += h;
+                                return n;
+                            };
+                        }),
+        };
+    }
+
+    private static int capacityFor(int n) {
+        return (int) (n / 0.75f) + 1;
+    }
+
+    private static MyList<Long> myList(Data d, int n) {
+        MyList<Long> list = new MyList<>(n);
+        for (int i = 0; i < n; i++) list.add(d.longs[i]);
+        return list;
+    }
+
+    private static ArrayList<Long> arrayList(Data d, int n) {
+        ArrayList<Long> list = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) list.add(d.longs[i]);
+        return list;
+    }
+
+    private static <K> MyMap<K, K> myMap(K[] keys, int n) {
+        MyMap<K, K> map = new MyMap<>(capacityFor(n), 0.75f);
+        for (int i = 0; i < n; i++) map.put(keys[i], keys[i]);
+        return map;
+    }
+
+    private static <K> HashMap<K, K> hashMap(K[] keys, int n) {
+        HashMap<K, K> map = new HashMap<>(capacityFor(n));
+        for (int i = 0; i < n; i++) map.put(keys[i], keys[i]);
+        return map;
+    }
+}
@@ -0,0 +1,200 @@
+package bench;
+
+import collections.MyList;
+import com.sun.management.ThreadMXBean;
+import factory.AbstractVehicle;
+import utils.FileTextUtils;
+import utils.PersistenceMode;
+import utils.VehicleConsoleCrudManager;
+import utils.VehicleDataProcessor;
+import utils.VehicleSnapshot;
+import utils.VehicleTable;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+// Load, serialize and persist throughput over one data file, for comparing parser and I/O
+// changes run to run:
+//   java -Xmx8g -cp out bench.ParseBenchmark <file> [-rounds n] [-generate rows [-seed n]
+//        [-malformed r] [-baddate r] [-unknown r]]
+// With -generate the file is first written by VehicleDataGenerator.
+//
+// Every phase runs once to warm up and then -rounds times (3 by default). Reported are the
+// median rows/s and MB/s, bytes allocated per row by all threads, and the highest peak heap
+// seen. The peak is the sum of the per-pool peaks after a GC, so it can overstate a little.
+// The data file itself is never modified: persist works on a copy in a temp directory.
+// Allocation and peak heap need jdk.management, an optional dependency of the module; when
+// it is not resolved (on the module path without --add-modules jdk.management) they print
+// as NaN.
+public class ParseBenchmark {
+    private static final ThreadMXBean THREADS = threadBean();
+
+    private interface Phase {
+        void run() throws IOException;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: ParseBenchmark <file> [-rounds n] [-generate rows [-seed n] [-malformed r] [-baddate r] [-unknown r]]");
+            System.exit(2);
+        }
+        String file = args[0];
+        int rounds = 3;
+        long generate = -1;
+        long seed = 1;
+        double malformed = 0, badDate = 0, unknown = 0;
+        for (int i = 1; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+                case "-rounds":
+                    rounds = Integer.parseInt(args[i + 1]);
+                    if (rounds < 1) throw new IllegalArgumentException("-rounds must be >= 1");
+                    break;
+                case "-generate":
+                    generate = (long) Double.parseDouble(args[i + 1]);
+                    break;
+                case "-seed":
+                    seed = Long.parseLong(args[i + 1]);
+                    break;
+                case "-malformed":
+                    malformed = Double.parseDouble(args[i + 1]);
+                    break;
+                case "-baddate":
+                    badDate = Double.parseDouble(args[i + 1]);
+                    break;
+                case "-unknown":
+                    unknown = Double.parseDouble(args[i + 1]);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+        if (generate >= 0) {
+            new VehicleDataGenerator(seed, malformed, badDate, unknown).write(file, generate);
+        }
+
+        Path dir = Files.createTempDirectory("vehicle-bench");
+        try {
+            run(file, dir, rounds);
+        } finally {
+            try (Stream<Path> files = Files.walk(dir)) {
+                files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+            }
+        }
+    }
+
+    private static void run(String file, Path dir, int rounds) throws IOException {
+        long bytes = Files.size(Paths.get(file));
+        int rows = FileTextUtils.countLines(file, 0, bytes);
+        String log = dir.resolve("bench.log").toString();
+        String snapshot = dir.resolve("bench.snapshot").toString();
+        VehicleDataProcessor processor = new VehicleDataProcessor();
+        MyList<AbstractVehicle> loaded = processor.readVehicles(file, log);
+
+        System.out.printf("%s: %d rows (%d loaded), %.1f MB, %s %s, max heap %d MB%n", file, rows, loaded.size(),
+                bytes / 1e6, System.getProperty("java.vm.name"), System.getProperty("java.version"),
+                Runtime.getRuntime().maxMemory() >> 20);
+        System.out.printf("%-16s %12s %10s %12s %14s%n", "phase", "rows/s", "MB/s", "alloc B/row", "peak heap MB");
+
+        measure("load", rows, bytes, rounds, () -> processor.readVehicles(file, log));
+        measure("load.mapped", rows, bytes, rounds, () -> processor.readVehiclesMapped(file, log));
+        measure("load.parallel", rows, bytes, rounds, () -> processor.readVehiclesParallel(file, log));
+        measure("load.table", rows, bytes, rounds, () -> processor.readVehicles(file, log, new VehicleTable()));
+
+        long serialized = 0;
+        for (int i = 0; i < loaded.size(); i++) {
+            serialized += processor.serializeVehicle(loaded.get(i)).length() + 1;
+        }
+        measure("serialize", loaded.size(), serialized, rounds, () -> {
+            long chars = 0;
+            for (int i = 0; i < loaded.size(); i++) {
+                chars += processor.serializeVehicle(loaded.get(i)).length();
+            }
+            if (chars < 0) throw new IllegalStateException();
+        });
+
+        VehicleSnapshot.write(loaded, snapshot, file);
+        long snapshotBytes = Files.size(Paths.get(snapshot));
+        measure("snapshot.write", loaded.size(), snapshotBytes, rounds, () -> VehicleSnapshot.write(loaded, snapshot, file));
+        measure("snapshot.read", loaded.size(), snapshotBytes, rounds, () -> VehicleSnapshot.read(snapshot));
+
+        // persist rewrites the data file and parses it again, so it gets a copy
+        Path copy = dir.resolve("bench.data");
+        Files.copy(Paths.get(file), copy, StandardCopyOption.REPLACE_EXISTING);
+        VehicleConsoleCrudManager manager = new VehicleConsoleCrudManager(copy.toString(), log, PersistenceMode.FULL_REWRITE);
+        manager.persist();
+        measure("persist", loaded.size(), Files.size(copy), rounds, manager::persist);
+    }
+
+    private static void measure(String name, long rows, long bytes, int rounds, Phase phase) throws IOException {
+        double[] seconds = new double[rounds];
+        double[] allocated = new double[rounds];
+        long peak = 0;
+        for (int r = -1; r < rounds; r++) {
+            System.gc();
+            resetPeakHeap();
+            long allocatedBefore = allocatedBytes();
+            long start = System.nanoTime();
+            phase.run();
+            long elapsed = System.nanoTime() - start;
+            long allocatedAfter = allocatedBytes();
+            if (r < 0) continue;
+            seconds[r] = elapsed / 1e9;
+            allocated[r] = THREADS == null ? Double.NaN : allocatedAfter - allocatedBefore;
+            peak = Math.max(peak, peakHeap());
+        }
+        double time = median(seconds);
+        System.out.printf("%-16s %12.0f %10.1f %12.1f %14.1f%n", name, rows / time, bytes / 1e6 / time,
+                median(allocated) / Math.max(rows, 1), THREADS == null ? Double.NaN : peak / 1e6);
+    }
+
+    private static double median(double[] values) {
+        double[] sorted = values.clone();
+        Arrays.sort(sorted);
+        return sorted[sorted.length / 2];
+    }
+
+    // null when the management modules are not resolved
+    private static ThreadMXBean threadBean() {
+        try {
+            java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+            return bean instanceof ThreadMXBean ? (ThreadMXBean) bean : null;
+        } catch (LinkageError e) {
+            return null;
+        }
+    }
+
+    // Over all live threads, so pool workers of the parallel load are counted too
+    private static long allocatedBytes() {
+        if (THREADS == null) return 0;
+        long total = 0;
+        for (long a : THREADS.getThreadAllocatedBytes(THREADS.getAllThreadIds())) {
+            if (a > 0) total += a;
+        }
+        return total;
+    }
+
+    private static void resetPeakHeap() {
+        if (THREADS == null) return;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) pool.resetPeakUsage();
+        }
+    }
+
+    private static long peakHeap() {
+        if (THREADS == null) return 0;
+        long total = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) total += pool.getPeakUsage().getUsed();
+        }
+        return total;
+    }
+}
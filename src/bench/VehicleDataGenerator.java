@@ -0,0 +1,151 @@
+package bench;
+
+import factory.EpochDays;
+import factory.VehicleType;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.SplittableRandom;
+
+// Writes dataFile.txt-format test data: the same seed and rates always give the same file.
+//   java -cp out bench.VehicleDataGenerator <file> <rows> [-seed n] [-malformed r] [-baddate r] [-unknown r]
+// Rows may be written as 1e6. The rates are per row in [0, 1]:
+//   malformed - one of id, enginePower, maxSpeed or price is junk or empty;
+//   baddate   - the date is empty, not a real day or not yyyy-MM-dd;
+//   unknown   - the type is not a VehicleType.
+// Ids run 1..rows, so with all rates at 0 every row loads.
+public class VehicleDataGenerator {
+    private static final String[] BRANDS = {
+            "Yamaha", "Honda", "Suzuki", "Kawasaki", "Ducati", "BMW", "KTM", "Vespa", "Piaggio",
+            "Aprilia", "Polaris", "Can-Am", "Peugeot", "Kymco", "Sym", "Segway", "Xiaomi", "Niu"
+    };
+    private static final String[] SERIES = {"R", "GT", "X", "S", "Sport", "City", "Trail", "Pro"};
+    private static final String[] UNKNOWN_TYPES = {"UNKNOWN", "TRUCK", "BICYCLE", "CAR"};
+    private static final String[] JUNK = {"", "abc", "4x", "60kw", "1-20", "NaN?", "--1", "1.2.3"};
+    private static final String[] BAD_DATES = {"", "2021-13-01", "2020-02-30", "2020/01/01", "01.02.2020", "20200101", "soon"};
+    private static final VehicleType[] TYPES = VehicleType.values();
+    private static final int MODEL_COUNT = 500;
+    private static final int FIRST_DAY = EpochDays.of(1990, 1, 1);
+    private static final int LAST_DAY = EpochDays.of(2025, 12, 31);
+
+    private final long seed;
+    private final double malformedRate;
+    private final double badDateRate;
+    private final double unknownTypeRate;
+    private final String[] models = new String[MODEL_COUNT];
+
+    public VehicleDataGenerator(long seed, double malformedRate, double badDateRate, double unknownTypeRate) {
+        if (!isRate(malformedRate) || !isRate(badDateRate) || !isRate(unknownTypeRate))
+            throw new IllegalArgumentException("Rates must be in [0, 1]");
+        this.seed = seed;
+        this.malformedRate = malformedRate;
+        this.badDateRate = badDateRate;
+        this.unknownTypeRate = unknownTypeRate;
+        SplittableRandom random = new SplittableRandom(seed);
+        for (int i = 0; i < MODEL_COUNT; i++) {
+            models[i] = BRANDS[random.nextInt(BRANDS.length)] + " " + SERIES[random.nextInt(SERIES.length)] + (i + 1);
+        }
+    }
+
+    private static boolean isRate(double r) {
+        return r >= 0 && r <= 1;
+    }
+
+    // Returns the size of the written file in bytes
+    public long write(String path, long rows) throws IOException {
+        SplittableRandom random = new SplittableRandom(seed ^ 0x5DEECE66DL);
+        try (Writer writer = new BufferedWriter(
+                new OutputStreamWriter(Files.newOutputStream(Paths.get(path)), StandardCharsets.UTF_8), 1 << 16)) {
+            StringBuilder line = new StringBuilder(96);
+            for (long id = 1; id <= rows; id++) {
+                line.setLength(0);
+                appendRow(line, id, random);
+                line.append('\n');
+                writer.append(line);
+            }
+        }
+        return Files.size(Paths.get(path));
+    }
+
+    private void appendRow(StringBuilder line, long id, SplittableRandom random) {
+        int malformed = random.nextDouble() < malformedRate ? 1 + random.nextInt(4) : 0;
+
+        if (random.nextDouble() < unknownTypeRate) {
+            line.append(UNKNOWN_TYPES[random.nextInt(UNKNOWN_TYPES.length)]);
+        } else {
+            line.append(TYPES[random.nextInt(TYPES.length)].name());
+        }
+        line.append(',');
+
+        if (malformed == 1) line.append(junk(random)); else line.append(id);
+        line.append(',').append(models[random.nextInt(MODEL_COUNT)]).append(',');
+
+        if (malformed == 2) {
+            line.append(junk(random));
+        } else {
+            int tenths = 10 + random.nextInt(2000);
+            line.append(tenths / 10).append('.').append(tenths % 10);
+        }
+        line.append(',');
+
+        if (malformed == 3) line.append(junk(random)); else line.append(20 + random.nextInt(280));
+        line.append(',');
+
+        if (random.nextDouble() < badDateRate) {
+            line.append(BAD_DATES[random.nextInt(BAD_DATES.length)]);
+        } else {
+            EpochDays.format(FIRST_DAY + random.nextInt(LAST_DAY - FIRST_DAY + 1), line);
+        }
+        line.append(',');
+
+        if (malformed == 4) {
+            line.append(junk(random));
+        } else {
+            int cents = 10_000 + random.nextInt(5_000_000);
+            line.append(cents / 100).append('.');
+            if (cents % 100 < 10) line.append('0');
+            line.append(cents % 100);
+        }
+    }
+
+    private static String junk(SplittableRandom random) {
+        return JUNK[random.nextInt(JUNK.length)];
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: VehicleDataGenerator <file> <rows> [-seed n] [-malformed r] [-baddate r] [-unknown r]");
+            System.exit(2);
+        }
+        long rows = (long) Double.parseDouble(args[1]);
+        long seed = 1;
+        double malformed = 0, badDate = 0, unknown = 0;
+        for (int i = 2; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+                case "-seed":
+                    seed = Long.parseLong(args[i + 1]);
+                    break;
+                case "-malformed":
+                    malformed = Double.parseDouble(args[i + 1]);
+                    break;
+                case "-baddate":
+                    badDate = Double.parseDouble(args[i + 1]);
+                    break;
+                case "-unknown":
+                    unknown = Double.parseDouble(args[i + 1]);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+        long start = System.nanoTime();
+        long bytes = new VehicleDataGenerator(seed, malformed, badDate, unknown).write(args[0], rows);
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%s: %d rows, %.1f MB in %.2f s%n", args[0], rows, bytes / 1e6, seconds);
+    }
+}
@@ -0,0 +1,389 @@
+package collections;
+
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Thread-safe hash map split into segments, each a small hash table with its own lock.
+// Writers lock only the segment of their key; readers take no lock at all. Chains are
+// immutable (Entry.next is final): a removal copies the entries in front of the removed
+// one and a resize builds new chains, so a reader always sees a consistent chain.
+// Iterators are weakly consistent: they never throw ConcurrentModificationException and
+// may or may not see changes made after they were created.
+public class ConcurrentMyMap<K, V> extends AbstractMyCollection {
+    private static final int DEFAULT_INITIAL_CAPACITY = 16;
+    private static final float DEFAULT_LOAD_FACTOR = 0.75f;
+    private static final int DEFAULT_CONCURRENCY_LEVEL = 16;
+    private static final int MAX_SEGMENTS = 1 << 16;
+
+    private final Segment<K, V>[] segments;
+    private final int segmentShift;
+    private final int segmentMask;
+
+    public ConcurrentMyMap() {
+        this(DEFAULT_INITIAL_CAPACITY, DEFAULT_LOAD_FACTOR, DEFAULT_CONCURRENCY_LEVEL);
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public ConcurrentMyMap(int initialCapacity, float loadFactor, int concurrencyLevel) {
+        if (initialCapacity <= 0 || loadFactor <= 0 || concurrencyLevel <= 0)
+            throw new IllegalArgumentException("Capacity, loadFactor and concurrencyLevel must be > 0");
+
+        int shift = 0;
+        int segmentCount = 1;
+        while (segmentCount < Math.min(concurrencyLevel, MAX_SEGMENTS)) {
+            segmentCount <<= 1;
+            shift++;
+        }
+        this.segmentShift = 32 - shift;
+        this.segmentMask = segmentCount - 1;
+        this.segments = (Segment<K, V>[]) new Segment[segmentCount];
+
+        int perSegment = (initialCapacity + segmentCount - 1) / segmentCount;
+        int cap = 1;
+        while (cap < perSegment) cap <<= 1;
+        for (int i = 0; i < segmentCount; i++) {
+            segments[i] = new Segment<>(cap, loadFactor);
+        }
+    }
+
+    // Segments are chosen by the high bits and buckets by the low bits, so the hash code
+    // is mixed well enough for both
+    private static int hash(Object key) {
+        int h = key.hashCode();
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        return h ^ (h >>> 16);
+    }
+
+    private Segment<K, V> segmentFor(int hash) {
+        return segments[(hash >>> segmentShift) & segmentMask];
+    }
+
+    public V put(K key, V value) {
+        Objects.requireNonNull(key);
+        Objects.requireNonNull(value);
+        int h = hash(key);
+        return segmentFor(h).put(key, h, value, false);
+    }
+
+    public V putIfAbsent(K key, V value) {
+        Objects.requireNonNull(key);
+        Objects.requireNonNull(value);
+        int h = hash(key);
+        return segmentFor(h).put(key, h, value, true);
+    }
+
+    public V get(Object key) {
+        int h = hash(key);
+        return segmentFor(h).get(key, h);
+    }
+
+    public boolean containsKey(Object key) {
+        return get(key) != null;
+    }
+
+    public boolean containsValue(Object value) {
+        Objects.requireNonNull(value);
+        java.util.Iterator<V> it = valueIterator();
+        while (it.hasNext()) {
+            if (value.equals(it.next())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public V remove(Object key) {
+        int h = hash(key);
+        return segmentFor(h).remove(key, h);
+    }
+
+    // Sum of the per-segment counts; exact when no write runs at the same time
+    @Override
+    public int size() {
+        long sum = 0;
+        for (Segment<K, V> segment : segments) {
+            sum += segment.count;
+        }
+        return (int) Math.min(sum, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public boolean isEmpty() {
+        for (Segment<K, V> segment : segments) {
+            if (segment.count != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void clear() {
+        for (Segment<K, V> segment : segments) {
+            segment.clear();
+        }
+    }
+
+    public Iterable<V> values() {
+        return this::valueIterator;
+    }
+
+    public java.util.Iterator<java.util.Map.Entry<K, V>> entryIterator() {
+        return new EntryItr();
+    }
+
+    public java.util.Iterator<K> keyIterator() {
+        final java.util.Iterator<java.util.Map.Entry<K, V>> ei = entryIterator();
+        return new java.util.Iterator<K>() {
+            @Override
+            public boolean hasNext() { return ei.hasNext(); }
+            @Override
+            public K next() { return ei.next().getKey(); }
+            @Override
+            public void remove() { ei.remove(); }
+        };
+    }
+
+    public java.util.Iterator<V> valueIterator() {
+        final java.util.Iterator<java.util.Map.Entry<K, V>> ei = entryIterator();
+        return new java.util.Iterator<V>() {
+            @Override
+            public boolean hasNext() { return ei.hasNext(); }
+            @Override
+            public V next() { return ei.next().getValue(); }
+            @Override
+            public void remove() { ei.remove(); }
+        };
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("{");
+        boolean first = true;
+        java.util.Iterator<java.util.Map.Entry<K, V>> it = entryIterator();
+        while (it.hasNext()) {
+            java.util.Map.Entry<K, V> e = it.next();
+            if (!first) sb.append(", ");
+            sb.append(e.getKey()).append("=").append(e.getValue());
+            first = false;
+        }
+        sb.append("}");
+        return sb.toString();
+    }
+
+    private static final class Entry<K, V> implements java.util.Map.Entry<K, V> {
+        final int hash;
+        final K key;
+        volatile V value;
+        final Entry<K, V> next;
+
+        Entry(int hash, K key, V value, Entry<K, V> next) {
+            this.hash = hash;
+            this.key = key;
+            this.value = value;
+            this.next = next;
+        }
+
+        @Override
+        public K getKey() {
+            return key;
+        }
+
+        @Override
+        public V getValue() {
+            return value;
+        }
+
+        @Override
+        public V setValue(V newValue) {
+            throw new UnsupportedOperationException("use ConcurrentMyMap.put");
+        }
+    }
+
+    private static final class Segment<K, V> extends ReentrantLock {
+        private static final long serialVersionUID = 1L;
+
+        volatile AtomicReferenceArray<Entry<K, V>> table;
+        volatile int count;
+        private int threshold;
+        private final float loadFactor;
+
+        Segment(int capacity, float loadFactor) {
+            this.loadFactor = loadFactor;
+            setTable(new AtomicReferenceArray<>(capacity));
+        }
+
+        private void setTable(AtomicReferenceArray<Entry<K, V>> newTable) {
+            threshold = (int) (newTable.length() * loadFactor);
+            table = newTable;
+        }
+
+        V get(Object key, int hash) {
+            AtomicReferenceArray<Entry<K, V>> tab = table;
+            for (Entry<K, V> e = tab.get(hash & (tab.length() - 1)); e != null; e = e.next) {
+                if (e.hash == hash && key.equals(e.key)) {
+                    return e.value;
+                }
+            }
+            return null;
+        }
+
+        V put(K key, int hash, V value, boolean onlyIfAbsent) {
+            lock();
+            try {
+                int c = count;
+                if (c + 1 > threshold) {
+                    rehash();
+                }
+                AtomicReferenceArray<Entry<K, V>> tab = table;
+                int idx = hash & (tab.length() - 1);
+                Entry<K, V> first = tab.get(idx);
+                for (Entry<K, V> e = first; e != null; e = e.next) {
+                    if (e.hash == hash && key.equals(e.key)) {
+                        V old = e.value;
+                        if (!onlyIfAbsent) {
+                            e.value = value;
+                        }
+                        return old;
+                    }
+                }
+                tab.set(idx, new Entry<>(hash, key, value, first));
+                count = c + 1;
+                return null;
+            } finally {
+                unlock();
+            }
+        }
+
+        V remove(Object key, int hash) {
+            lock();
+            try {
+                AtomicReferenceArray<Entry<K, V>> tab = table;
+                int idx = hash & (tab.length() - 1);
+                Entry<K, V> first = tab.get(idx);
+                Entry<K, V> e = first;
+                while (e != null && !(e.hash == hash && key.equals(e.key))) {
+                    e = e.next;
+                }
+                if (e == null) {
+                    return null;
+                }
+                // entries in front of e are copied, the tail after e is shared
+                Entry<K, V> newFirst = e.next;
+                for (Entry<K, V> p = first; p != e; p = p.next) {
+                    newFirst = new Entry<>(p.hash, p.key, p.value, newFirst);
+                }
+                tab.set(idx, newFirst);
+                count = count - 1;
+                return e.value;
+            } finally {
+                unlock();
+            }
+        }
+
+        void clear() {
+            lock();
+            try {
+                if (count != 0) {
+                    setTable(new AtomicReferenceArray<>(table.length()));
+                    count = 0;
+                }
+            } finally {
+                unlock();
+            }
+        }
+
+        // Called with the lock held. The longest tail of a chain that lands in one new
+        // bucket is reused as is, the entries in front of it are copied.
+        private void rehash() {
+            AtomicReferenceArray<Entry<K, V>> oldTable = table;
+            int oldCapacity = oldTable.length();
+            AtomicReferenceArray<Entry<K, V>> newTable = new AtomicReferenceArray<>(oldCapacity << 1);
+            int mask = newTable.length() - 1;
+            for (int i = 0; i < oldCapacity; i++) {
+                Entry<K, V> first = oldTable.get(i);
+                if (first == null) continue;
+
+                Entry<K, V> lastRun = first;
+                int lastIdx = first.hash & mask;
+                for (Entry<K, V> e = first.next; e != null; e = e.next) {
+                    int idx = e.hash & mask;
+                    if (idx != lastIdx) {
+                        lastIdx = idx;
+                        lastRun = e;
+                    }
+                }
+                newTable.set(lastIdx, lastRun);
+                for (Entry<K, V> e = first; e != lastRun; e = e.next) {
+                    int idx = e.hash & mask;
+                    newTable.set(idx, new Entry<>(e.hash, e.key, e.value, newTable.get(idx)));
+                }
+            }
+            setTable(newTable);
+        }
+    }
+
+    private class EntryItr implements java.util.Iterator<java.util.Map.Entry<K, V>> {
+        private int segmentIndex = 0;
+        private AtomicReferenceArray<Entry<K, V>> currentTable;
+        private int bucketIndex = 0;
+        private Entry<K, V> next;
+        private Entry<K, V> lastReturned;
+
+        EntryItr() {
+            advance();
+        }
+
+        private void advance() {
+            if (next != null && next.next != null) {
+                next = next.next;
+                return;
+            }
+            next = null;
+            while (true) {
+                if (currentTable != null) {
+                    while (bucketIndex < currentTable.length()) {
+                        Entry<K, V> e = currentTable.get(bucketIndex++);
+                        if (e != null) {
+                            next = e;
+                            return;
+                        }
+                    }
+                }
+                if (segmentIndex >= segments.length) {
+                    return;
+                }
+                currentTable = segments[segmentIndex++].table;
+                bucketIndex = 0;
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public java.util.Map.Entry<K, V> next() {
+            if (next == null) {
+                throw new java.util.NoSuchElementException();
+            }
+            lastReturned = next;
+            advance();
+            return lastReturned;
+        }
+
+        @Override
+        public void remove() {
+            if (lastReturned == null) {
+                throw new IllegalStateException();
+            }
+            ConcurrentMyMap.this.remove(lastReturned.key);
+            lastReturned = null;
+        }
+    }
+}
@@ -0,0 +1,200 @@
+package collections;
+
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.function.Predicate;
+
+// List for many readers and few writers. The elements live in an array that is never
+// modified once published: every mutation copies it under a lock and then swaps the
+// volatile reference. Readers and iterators take no lock and work on the array they
+// saw first, so an iterator never throws ConcurrentModificationException and does not
+// see changes made after it was created. Each write costs O(n); use addAll for bulk loads.
+public class CopyOnWriteMyList<E> extends AbstractMyCollection implements MyIndexedCollection<E> {
+    private static final Object[] EMPTY = new Object[0];
+
+    private final Object lock = new Object();
+    private volatile Object[] elements = EMPTY;
+
+    public CopyOnWriteMyList() {
+    }
+
+    public CopyOnWriteMyList(MyIndexedCollection<? extends E> source) {
+        Object[] copy = new Object[source.size()];
+        for (int i = 0; i < copy.length; i++) {
+            copy[i] = source.get(i);
+        }
+        elements = copy;
+    }
+
+    @Override
+    public int size() {
+        return elements.length;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return elements.length == 0;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public E get(int index) {
+        Object[] snapshot = elements;
+        rangeCheck(index, snapshot.length);
+        return (E) snapshot[index];
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public E set(int index, E e) {
+        synchronized (lock) {
+            Object[] current = elements;
+            rangeCheck(index, current.length);
+            E old = (E) current[index];
+            if (old != e) {
+                Object[] copy = current.clone();
+                copy[index] = e;
+                elements = copy;
+            }
+            return old;
+        }
+    }
+
+    @Override
+    public void add(E e) {
+        synchronized (lock) {
+            Object[] current = elements;
+            Object[] copy = Arrays.copyOf(current, current.length + 1);
+            copy[current.length] = e;
+            elements = copy;
+        }
+    }
+
+    public void add(int index, E e) {
+        synchronized (lock) {
+            Object[] current = elements;
+            if (index < 0 || index > current.length) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + current.length);
+            }
+            Object[] copy = new Object[current.length + 1];
+            System.arraycopy(current, 0, copy, 0, index);
+            copy[index] = e;
+            System.arraycopy(current, index, copy, index + 1, current.length - index);
+            elements = copy;
+        }
+    }
+
+    // One copy for the whole batch instead of one per element
+    public void addAll(MyIndexedCollection<? extends E> source) {
+        int count = source.size();
+        if (count == 0) return;
+        synchronized (lock) {
+            Object[] current = elements;
+            Object[] copy = Arrays.copyOf(current, current.length + count);
+            for (int i = 0; i < count; i++) {
+                copy[current.length + i] = source.get(i);
+            }
+            elements = copy;
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public E remove(int index) {
+        synchronized (lock) {
+            Object[] current = elements;
+            rangeCheck(index, current.length);
+            E old = (E) current[index];
+            Object[] copy = new Object[current.length - 1];
+            System.arraycopy(current, 0, copy, 0, index);
+            System.arraycopy(current, index + 1, copy, index, current.length - index - 1);
+            elements = copy;
+            return old;
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public boolean removeIf(Predicate<? super E> filter) {
+        Objects.requireNonNull(filter);
+        synchronized (lock) {
+            Object[] current = elements;
+            Object[] kept = new Object[current.length];
+            int count = 0;
+            for (Object e : current) {
+                if (!filter.test((E) e)) {
+                    kept[count++] = e;
+                }
+            }
+            if (count == current.length) return false;
+            elements = Arrays.copyOf(kept, count);
+            return true;
+        }
+    }
+
+    @Override
+    public void clear() {
+        synchronized (lock) {
+            elements = EMPTY;
+        }
+    }
+
+    public boolean contains(E e) {
+        return indexOf(e) >= 0;
+    }
+
+    public int indexOf(E e) {
+        Object[] snapshot = elements;
+        for (int i = 0; i < snapshot.length; i++) {
+            if (Objects.equals(e, snapshot[i])) return i;
+        }
+        return -1;
+    }
+
+    // Independent list with the current contents, made without copying: writes to
+    // either list afterwards do not affect the other
+    public MyIndexedCollection<E> snapshot() {
+        CopyOnWriteMyList<E> copy = new CopyOnWriteMyList<>();
+        copy.elements = elements;
+        return copy;
+    }
+
+    private static void rangeCheck(int index, int length) {
+        if (index < 0 || index >= length) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + length);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return Arrays.toString(elements);
+    }
+
+    @Override
+    public java.util.Iterator<E> iterator() {
+        return new Itr<>(elements);
+    }
+
+    private static final class Itr<E> implements java.util.Iterator<E> {
+        private final Object[] snapshot;
+        private int cursor = 0;
+
+        Itr(Object[] snapshot) {
+            this.snapshot = snapshot;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return cursor < snapshot.length;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public E next() {
+            if (cursor >= snapshot.length) {
+                throw new java.util.NoSuchElementException();
+            }
+            return (E) snapshot[cursor++];
+        }
+    }
+}
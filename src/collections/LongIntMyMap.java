@@ -0,0 +1,179 @@
+package collections;
+
+import java.util.Arrays;
+
+// Map from primitive long keys to primitive int values, laid out like LongMyMap (open
+// addressing, linear probing, backward-shift removal) but with nothing boxed: occupied
+// slots are marked in a separate array.
+public class LongIntMyMap extends AbstractMyCollection {
+    private static final int DEFAULT_INITIAL_CAPACITY = 16;
+    private static final float DEFAULT_LOAD_FACTOR = 0.5f;
+
+    private long[] keys;
+    private int[] values;
+    private boolean[] used;
+    private int mask;
+    private int threshold;
+    private final float loadFactor;
+
+    public LongIntMyMap() {
+        this(DEFAULT_INITIAL_CAPACITY, DEFAULT_LOAD_FACTOR);
+    }
+
+    public LongIntMyMap(int initialCapacity, float loadFactor) {
+        if (initialCapacity <= 0 || loadFactor <= 0 || loadFactor >= 1)
+            throw new IllegalArgumentException("Capacity must be > 0 and loadFactor in (0, 1)");
+
+        int cap = 2;
+        while (cap < initialCapacity) cap <<= 1;
+        this.loadFactor = loadFactor;
+        allocate(cap);
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = new int[capacity];
+        used = new boolean[capacity];
+        mask = capacity - 1;
+        threshold = Math.min(capacity - 1, (int) (capacity * loadFactor));
+    }
+
+    private static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        h ^= h >>> 32;
+        return (int) (h ^ (h >>> 16));
+    }
+
+    public int capacity() {
+        return keys.length;
+    }
+
+    public void put(long key, int value) {
+        int idx = hash(key) & mask;
+        while (used[idx]) {
+            if (keys[idx] == key) {
+                values[idx] = value;
+                return;
+            }
+            idx = (idx + 1) & mask;
+        }
+        keys[idx] = key;
+        values[idx] = value;
+        used[idx] = true;
+        increaseSize();
+        if (size > threshold) {
+            resize(2 * keys.length);
+        }
+    }
+
+    public int get(long key, int defaultValue) {
+        int idx = slotOf(key);
+        return idx < 0 ? defaultValue : values[idx];
+    }
+
+    public boolean containsKey(long key) {
+        return slotOf(key) >= 0;
+    }
+
+    public boolean remove(long key) {
+        int idx = slotOf(key);
+        if (idx < 0) {
+            return false;
+        }
+        deleteSlot(idx);
+        decreaseSize();
+        return true;
+    }
+
+    @Override
+    public void clear() {
+        Arrays.fill(used, false);
+        size = 0;
+    }
+
+    private int slotOf(long key) {
+        int idx = hash(key) & mask;
+        while (used[idx]) {
+            if (keys[idx] == key) {
+                return idx;
+            }
+            idx = (idx + 1) & mask;
+        }
+        return -1;
+    }
+
+    private void deleteSlot(int gap) {
+        int idx = gap;
+        while (true) {
+            idx = (idx + 1) & mask;
+            if (!used[idx]) {
+                break;
+            }
+            int home = hash(keys[idx]) & mask;
+            boolean staysPut = gap <= idx ? (gap < home && home <= idx) : (gap < home || home <= idx);
+            if (staysPut) {
+                continue;
+            }
+            keys[gap] = keys[idx];
+            values[gap] = values[idx];
+            gap = idx;
+        }
+        used[gap] = false;
+    }
+
+    private void resize(int newCapacity) {
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        boolean[] oldUsed = used;
+        allocate(newCapacity);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (!oldUsed[i]) continue;
+            int idx = hash(oldKeys[i]) & mask;
+            while (used[idx]) {
+                idx = (idx + 1) & mask;
+            }
+            keys[idx] = oldKeys[i];
+            values[idx] = oldValues[i];
+            used[idx] = true;
+        }
+    }
+
+    // Not fail-fast: the map must not change while the keys are walked
+    public java.util.PrimitiveIterator.OfLong keyIterator() {
+        return new java.util.PrimitiveIterator.OfLong() {
+            private int pos = -1;
+            private int remaining = size;
+
+            @Override
+            public boolean hasNext() {
+                return remaining > 0;
+            }
+
+            @Override
+            public long nextLong() {
+                if (remaining == 0) {
+                    throw new java.util.NoSuchElementException();
+                }
+                remaining--;
+                do {
+                    pos++;
+                } while (!used[pos]);
+                return keys[pos];
+            }
+        };
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("{");
+        boolean first = true;
+        for (int i = 0; i < keys.length; i++) {
+            if (!used[i]) continue;
+            if (!first) sb.append(", ");
+            sb.append(keys[i]).append("=").append(values[i]);
+            first = false;
+        }
+        sb.append("}");
+        return sb.toString();
+    }
+}
@@ -0,0 +1,292 @@
+package collections;
+
+import metrics.LatencyHistogram;
+import metrics.Metrics;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+// Map from primitive long keys to values: open addressing with linear probing over a
+// long[] key array, so neither keys nor entries are allocated. An empty slot is one
+// whose value is null, therefore null values are not supported. Removal shifts the
+// following entries back instead of leaving tombstones.
+public class LongMyMap<V> extends AbstractMyCollection {
+    private static final int DEFAULT_INITIAL_CAPACITY = 16;
+    private static final float DEFAULT_LOAD_FACTOR = 0.5f;
+    private static final LatencyHistogram RESIZE_TIMES = Metrics.histogram("LongMyMap.resize");
+    private int modCount = 0;
+
+    private long[] keys;
+    private Object[] values;
+    private int mask;
+    private int threshold;
+    private final float loadFactor;
+
+    public LongMyMap() {
+        this(DEFAULT_INITIAL_CAPACITY, DEFAULT_LOAD_FACTOR);
+    }
+
+    public LongMyMap(int initialCapacity, float loadFactor) {
+        if (initialCapacity <= 0 || loadFactor <= 0 || loadFactor >= 1)
+            throw new IllegalArgumentException("Capacity must be > 0 and loadFactor in (0, 1)");
+
+        int cap = 2;
+        while (cap < initialCapacity) cap <<= 1;
+        this.loadFactor = loadFactor;
+        allocate(cap);
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = new Object[capacity];
+        mask = capacity - 1;
+        threshold = Math.min(capacity - 1, (int) (capacity * loadFactor));
+    }
+
+    private static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        h ^= h >>> 32;
+        return (int) (h ^ (h >>> 16));
+    }
+
+    public int capacity() {
+        return keys.length;
+    }
+
+    public V put(long key, V value) {
+        Objects.requireNonNull(value, "LongMyMap does not support null values");
+        int idx = hash(key) & mask;
+        while (values[idx] != null) {
+            if (keys[idx] == key) {
+                @SuppressWarnings("unchecked")
+                V old = (V) values[idx];
+                values[idx] = value;
+                return old;
+            }
+            idx = (idx + 1) & mask;
+        }
+        keys[idx] = key;
+        values[idx] = value;
+        increaseSize();
+        modCount++;
+        if (size > threshold) {
+            resize(2 * keys.length);
+        }
+        return null;
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(long key) {
+        int idx = slotOf(key);
+        return idx < 0 ? null : (V) values[idx];
+    }
+
+    public boolean containsKey(long key) {
+        return slotOf(key) >= 0;
+    }
+
+    public boolean containsValue(Object value) {
+        for (Object v : values) {
+            if (v != null && v.equals(value)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @SuppressWarnings("unchecked")
+    public V remove(long key) {
+        int idx = slotOf(key);
+        if (idx < 0) {
+            return null;
+        }
+        V old = (V) values[idx];
+        deleteSlot(idx, null);
+        decreaseSize();
+        modCount++;
+        return old;
+    }
+
+    @Override
+    public void clear() {
+        Arrays.fill(values, null);
+        size = 0;
+        modCount++;
+    }
+
+    private int slotOf(long key) {
+        int idx = hash(key) & mask;
+        while (values[idx] != null) {
+            if (keys[idx] == key) {
+                return idx;
+            }
+            idx = (idx + 1) & mask;
+        }
+        return -1;
+    }
+
+    // Backward-shift deletion: entries after the gap whose home slot is not between
+    // the gap and their current slot are moved into the gap
+    private void deleteSlot(int gap, Itr itr) {
+        int idx = gap;
+        while (true) {
+            idx = (idx + 1) & mask;
+            if (values[idx] == null) {
+                break;
+            }
+            int home = hash(keys[idx]) & mask;
+            boolean staysPut = gap <= idx ? (gap < home && home <= idx) : (gap < home || home <= idx);
+            if (staysPut) {
+                continue;
+            }
+            if (itr != null) {
+                itr.moved(idx, gap);
+            }
+            keys[gap] = keys[idx];
+            values[gap] = values[idx];
+            gap = idx;
+        }
+        values[gap] = null;
+    }
+
+    private void resize(int newCapacity) {
+        long start = System.nanoTime();
+        long[] oldKeys = keys;
+        Object[] oldValues = values;
+        allocate(newCapacity);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldValues[i] == null) continue;
+            int idx = hash(oldKeys[i]) & mask;
+            while (values[idx] != null) {
+                idx = (idx + 1) & mask;
+            }
+            keys[idx] = oldKeys[i];
+            values[idx] = oldValues[i];
+        }
+        RESIZE_TIMES.recordSince(start);
+    }
+
+    public Iterable<V> values() {
+        return this::valueIterator;
+    }
+
+    public java.util.Iterator<V> valueIterator() {
+        return new ValueItr();
+    }
+
+    public java.util.PrimitiveIterator.OfLong keyIterator() {
+        return new KeyItr();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("{");
+        boolean first = true;
+        for (int i = 0; i < keys.length; i++) {
+            if (values[i] == null) continue;
+            if (!first) sb.append(", ");
+            sb.append(keys[i]).append("=").append(values[i]);
+            first = false;
+        }
+        sb.append("}");
+        return sb.toString();
+    }
+
+    private class ValueItr extends Itr implements java.util.Iterator<V> {
+        @Override
+        @SuppressWarnings("unchecked")
+        public V next() {
+            advance();
+            return (V) lastValue;
+        }
+    }
+
+    private class KeyItr extends Itr implements java.util.PrimitiveIterator.OfLong {
+        @Override
+        public long nextLong() {
+            advance();
+            return lastKey;
+        }
+    }
+
+    // Walks the table from the last slot down. A removal through the iterator may pull an
+    // entry that has not been visited yet (one that wrapped around the end of the table)
+    // into the visited part; such entries are remembered and returned at the end.
+    private abstract class Itr {
+        private int pos = keys.length;
+        private int remaining = size;
+        private int expectedModCount = modCount;
+        private boolean canRemove;
+        private boolean fromWrapped;
+
+        private long[] wrappedKeys;
+        private Object[] wrappedValues;
+        private int wrappedCount;
+        private int wrappedPos = -1;
+
+        long lastKey;
+        Object lastValue;
+
+        public boolean hasNext() {
+            return remaining > 0;
+        }
+
+        final void advance() {
+            checkForComodification();
+            if (remaining == 0) {
+                throw new java.util.NoSuchElementException();
+            }
+            remaining--;
+            canRemove = true;
+            while (--pos >= 0) {
+                if (values[pos] != null) {
+                    lastKey = keys[pos];
+                    lastValue = values[pos];
+                    fromWrapped = false;
+                    return;
+                }
+            }
+            pos = -1;
+            wrappedPos++;
+            lastKey = wrappedKeys[wrappedPos];
+            lastValue = wrappedValues[wrappedPos];
+            fromWrapped = true;
+        }
+
+        void moved(int from, int to) {
+            if (from < pos && to >= pos) {
+                if (wrappedKeys == null) {
+                    wrappedKeys = new long[2];
+                    wrappedValues = new Object[2];
+                } else if (wrappedCount == wrappedKeys.length) {
+                    wrappedKeys = Arrays.copyOf(wrappedKeys, wrappedCount << 1);
+                    wrappedValues = Arrays.copyOf(wrappedValues, wrappedCount << 1);
+                }
+                wrappedKeys[wrappedCount] = keys[from];
+                wrappedValues[wrappedCount] = values[from];
+                wrappedCount++;
+            }
+        }
+
+        public void remove() {
+            checkForComodification();
+            if (!canRemove) {
+                throw new IllegalStateException();
+            }
+            if (fromWrapped) {
+                LongMyMap.this.remove(lastKey);
+            } else {
+                deleteSlot(pos, this);
+                decreaseSize();
+                modCount++;
+            }
+            canRemove = false;
+            expectedModCount = modCount;
+        }
+
+        final void checkForComodification() {
+            if (modCount != expectedModCount)
+                throw new java.util.ConcurrentModificationException();
+        }
+    }
+}
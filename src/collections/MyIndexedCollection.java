@@ -0,0 +1,21 @@
+package collections;
+
+import java.util.function.Predicate;
+
+public interface MyIndexedCollection<E> extends MyIterable<E> {
+    int size();
+
+    boolean isEmpty();
+
+    E get(int index);
+
+    E set(int index, E e);
+
+    void add(E e);
+
+    E remove(int index);
+
+    boolean removeIf(Predicate<? super E> filter);
+
+    void clear();
+}
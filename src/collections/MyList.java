@@ -1,8 +1,15 @@
 package collections;
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Objects;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
-public class MyList<E> extends AbstractMyCollection {
+public class MyList<E> extends AbstractMyCollection implements MyIndexedCollection<E> {
     private static final int DEFAULT_CAPACITY = 10;
     private Object[] elements;
     private int modCount = 0;
@@ -45,6 +52,22 @@ public class MyList<E> extends AbstractMyCollection {
         modCount++;
     }
 
+    // Grows the array at most once for the whole batch
+    public void addAll(MyIndexedCollection<? extends E> source) {
+        int count = source.size();
+        if (count == 0) return;
+        ensureCapacity(size + count);
+        if (source instanceof MyList) {
+            System.arraycopy(((MyList<?>) source).elements, 0, elements, size, count);
+        } else {
+            for (int i = 0; i < count; i++) {
+                elements[size + i] = source.get(i);
+            }
+        }
+        size += count;
+        modCount++;
+    }
+
     @SuppressWarnings("unchecked")
     public E get(int index) {
         rangeCheck(index);
@@ -81,6 +104,55 @@ public class MyList<E> extends AbstractMyCollection {
         modCount++;
     }
 
+    // Keeps the elements that do not match, preserving their order. The filter sees every
+    // element before anything moves, so a filter that throws leaves the list unchanged.
+    @SuppressWarnings("unchecked")
+    public boolean removeIf(Predicate<? super E> filter) {
+        Objects.requireNonNull(filter);
+        int expectedModCount = modCount;
+        BitSet removed = new BitSet(size);
+        for (int i = 0; i < size; i++) {
+            if (filter.test((E) elements[i])) {
+                removed.set(i);
+            }
+        }
+        if (modCount != expectedModCount)
+            throw new java.util.ConcurrentModificationException();
+        if (removed.isEmpty()) return false;
+        int kept = removed.nextSetBit(0);
+        for (int i = removed.nextClearBit(kept); i < size; i = removed.nextClearBit(i + 1)) {
+            elements[kept++] = elements[i];
+        }
+        for (int i = kept; i < size; i++) {
+            elements[i] = null;
+        }
+        size = kept;
+        modCount++;
+        return true;
+    }
+
+    @SuppressWarnings("unchecked")
+    public void replaceAll(UnaryOperator<E> operator) {
+        Objects.requireNonNull(operator);
+        int expectedModCount = modCount;
+        for (int i = 0; i < size; i++) {
+            elements[i] = operator.apply((E) elements[i]);
+        }
+        if (modCount != expectedModCount)
+            throw new java.util.ConcurrentModificationException();
+    }
+
+    @SuppressWarnings("unchecked")
+    public void forEach(Consumer<? super E> action) {
+        Objects.requireNonNull(action);
+        int expectedModCount = modCount;
+        for (int i = 0; i < size && modCount == expectedModCount; i++) {
+            action.accept((E) elements[i]);
+        }
+        if (modCount != expectedModCount)
+            throw new java.util.ConcurrentModificationException();
+    }
+
     public boolean contains(E e) {
         return indexOf(e) >= 0;
     }
@@ -131,6 +203,91 @@ public class MyList<E> extends AbstractMyCollection {
         return new Itr();
     }
 
+    public Spliterator<E> spliterator() {
+        return new ListSpliterator(0, -1, 0);
+    }
+
+    public Stream<E> stream() {
+        return StreamSupport.stream(spliterator(), false);
+    }
+
+    public Stream<E> parallelStream() {
+        return StreamSupport.stream(spliterator(), true);
+    }
+
+    // Splits the backing array in halves. The range is bound on first use, so a stream
+    // sees the list as it is when the terminal operation starts.
+    private class ListSpliterator implements Spliterator<E> {
+        private int index;
+        private int fence;             // -1 until bound
+        private int expectedModCount;
+
+        ListSpliterator(int origin, int fence, int expectedModCount) {
+            this.index = origin;
+            this.fence = fence;
+            this.expectedModCount = expectedModCount;
+        }
+
+        private int getFence() {
+            if (fence < 0) {
+                expectedModCount = modCount;
+                fence = size;
+            }
+            return fence;
+        }
+
+        @Override
+        public Spliterator<E> trySplit() {
+            int hi = getFence();
+            int lo = index;
+            int mid = (lo + hi) >>> 1;
+            if (lo >= mid) {
+                return null;
+            }
+            index = mid;
+            return new ListSpliterator(lo, mid, expectedModCount);
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public boolean tryAdvance(Consumer<? super E> action) {
+            Objects.requireNonNull(action);
+            int hi = getFence();
+            if (index >= hi) {
+                return false;
+            }
+            E e = (E) elements[index++];
+            action.accept(e);
+            if (modCount != expectedModCount)
+                throw new java.util.ConcurrentModificationException();
+            return true;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public void forEachRemaining(Consumer<? super E> action) {
+            Objects.requireNonNull(action);
+            int hi = getFence();
+            Object[] a = elements;
+            for (int i = index; i < hi; i++) {
+                action.accept((E) a[i]);
+            }
+            index = hi;
+            if (modCount != expectedModCount)
+                throw new java.util.ConcurrentModificationException();
+        }
+
+        @Override
+        public long estimateSize() {
+            return getFence() - index;
+        }
+
+        @Override
+        public int characteristics() {
+            return Spliterator.ORDERED | Spliterator.SIZED | Spliterator.SUBSIZED;
+        }
+    }
+
     private class Itr implements java.util.Iterator<E> {
         private int cursor = 0;       // index of next element to return
         private int lastRet = -1;     // index of last element returned; -1 if none
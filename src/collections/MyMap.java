@@ -1,23 +1,57 @@
 package collections;
+import metrics.Counter;
+import metrics.LatencyHistogram;
+import metrics.Metrics;
+
 import java.util.Arrays;
 import java.util.Objects;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 public class MyMap<K, V> extends AbstractMyCollection {
     private static final int DEFAULT_INITIAL_CAPACITY = 16;
     private static final float DEFAULT_LOAD_FACTOR = 0.75f;
+    // A bucket whose chain reaches TREEIFY_THRESHOLD entries gets a balanced tree over the
+    // chain; it goes back to a plain chain at UNTREEIFY_THRESHOLD. Small tables grow instead.
+    private static final int TREEIFY_THRESHOLD = 8;
+    private static final int UNTREEIFY_THRESHOLD = 6;
+    private static final int MIN_TREEIFY_CAPACITY = 64;
+    // Old buckets moved by every put/get/remove while an incremental resize runs
+    private static final int MIGRATION_STEP = 16;
+    private static final LatencyHistogram RESIZE_TIMES = Metrics.histogram("MyMap.resize");
+    private static final Counter INCREMENTAL_RESIZES = Metrics.counter("MyMap.resize.incremental");
     private int modCount = 0;
 
     @SuppressWarnings("unchecked")
     private Entry<K, V>[] table = new Entry[DEFAULT_INITIAL_CAPACITY];
     
+    // roots[i] != null marks bucket i as treeified; null while no bucket is
+    private TreeEntry<K, V>[] roots;
+
+    // Incremental resize: while oldTable != null, entries still live in both tables.
+    // Old buckets below transferIndex, and any old bucket that is null, are already moved.
+    private Entry<K, V>[] oldTable;
+    private TreeEntry<K, V>[] oldRoots;
+    private int transferIndex;
+
     private int threshold = (int) (DEFAULT_INITIAL_CAPACITY * DEFAULT_LOAD_FACTOR);
     private final float loadFactor;
+    private final boolean incrementalResize;
 
     public MyMap() {
         this(DEFAULT_INITIAL_CAPACITY, DEFAULT_LOAD_FACTOR);
     }
 
     public MyMap(int initialCapacity, float loadFactor) {
+        this(initialCapacity, loadFactor, false);
+    }
+
+    // With incrementalResize the rehash after growing is spread over the following
+    // put/get/remove calls instead of being done inside the put that crossed the threshold
+    public MyMap(int initialCapacity, float loadFactor, boolean incrementalResize) {
         if (initialCapacity <= 0 || loadFactor <= 0)
             throw new IllegalArgumentException("Capacity and loadFactor must be > 0");
         
@@ -26,6 +60,7 @@ public class MyMap<K, V> extends AbstractMyCollection {
         this.table = (Entry<K, V>[]) new Entry[cap];
         this.loadFactor = loadFactor;
         this.threshold = (int) (cap * loadFactor);
+        this.incrementalResize = incrementalResize;
     }
 
     private int hash(Object key) {
@@ -39,28 +74,58 @@ public class MyMap<K, V> extends AbstractMyCollection {
 
     public V put(K key, V value) {
         int h = hash(key);
+        helpResize(h);
         int idx = indexFor(h, table.length);
-        for (Entry<K, V> e = table[idx]; e != null; e = e.next) {
-            if (e.hash == h && Objects.equals(e.key, key)) {
-                V old = e.value;
-                e.value = value;
+        TreeEntry<K, V> root = rootAt(idx);
+        if (root != null) {
+            TreeEntry<K, V> found = findInTree(root, h, key);
+            if (found != null) {
+                V old = found.value;
+                found.value = value;
                 return old;
             }
+            TreeEntry<K, V> e = new TreeEntry<>(h, key, value, table[idx]);
+            ((TreeEntry<K, V>) table[idx]).prev = e;
+            table[idx] = e;
+            roots[idx] = insertIntoTree(root, e);
+        } else {
+            int binCount = 0;
+            for (Entry<K, V> e = table[idx]; e != null; e = e.next) {
+                if (e.hash == h && Objects.equals(e.key, key)) {
+                    V old = e.value;
+                    e.value = value;
+                    return old;
+                }
+                binCount++;
+            }
+
+            Entry<K, V> e = new Entry<>(h, key, value, table[idx]);
+            table[idx] = e;
+            if (binCount + 1 >= TREEIFY_THRESHOLD) {
+                treeifyBin(idx);
+            }
         }
-        
-        Entry<K, V> e = new Entry<>(h, key, value, table[idx]);
-        table[idx] = e;
         increaseSize();
         modCount++;
         if (size > threshold) {
-            resize(2 * table.length);
+            if (incrementalResize) {
+                startIncrementalResize();
+            } else {
+                resize(2 * table.length);
+            }
         }
         return null;
     }
 
     public V get(Object key) {
         int h = hash(key);
+        helpResize(h);
         int idx = indexFor(h, table.length);
+        TreeEntry<K, V> root = rootAt(idx);
+        if (root != null) {
+            TreeEntry<K, V> found = findInTree(root, h, key);
+            return found == null ? null : found.value;
+        }
         for (Entry<K, V> e = table[idx]; e != null; e = e.next) {
             if (e.hash == h && Objects.equals(e.key, key)) {
                 return e.value;
@@ -71,7 +136,21 @@ public class MyMap<K, V> extends AbstractMyCollection {
 
     public V remove(Object key) {
         int h = hash(key);
+        helpResize(h);
         int idx = indexFor(h, table.length);
+        TreeEntry<K, V> root = rootAt(idx);
+        if (root != null) {
+            TreeEntry<K, V> e = findInTree(root, h, key);
+            if (e == null) {
+                return null;
+            }
+            removeTreeEntry(idx, root, e);
+            V old = e.value;
+            e.value = null;
+            decreaseSize();
+            modCount++;
+            return old;
+        }
         Entry<K, V> prev = null;
         for (Entry<K, V> e = table[idx]; e != null; prev = e, e = e.next) {
             if (e.hash == h && Objects.equals(e.key, key)) {
@@ -95,6 +174,7 @@ public class MyMap<K, V> extends AbstractMyCollection {
     }
 
     public boolean containsValue(Object value) {
+        finishResize();
         for (Entry<K, V> bucket : table) {
             for (Entry<K, V> e = bucket; e != null; e = e.next) {
                 if (Objects.equals(e.value, value)) {
@@ -108,6 +188,9 @@ public class MyMap<K, V> extends AbstractMyCollection {
     @Override
     public void clear() {
         Arrays.fill(table, null);
+        roots = null;
+        oldTable = null;
+        oldRoots = null;
         size = 0;
         modCount++;
     }
@@ -126,29 +209,330 @@ public class MyMap<K, V> extends AbstractMyCollection {
                     public void remove() { ei.remove(); }
                 };
             }
+
+            @Override
+            public Spliterator<V> spliterator() {
+                return valueSpliterator();
+            }
         };
     }
 
     @SuppressWarnings("unchecked")
     private void resize(int newCapacity) {
+        long start = System.nanoTime();
+        finishResize();
         Entry<K, V>[] oldTable = table;
-        Entry<K, V>[] newTable = (Entry<K, V>[]) new Entry[newCapacity];
-        
-        for (Entry<K, V> bucket : oldTable) {
-            for (Entry<K, V> e = bucket; e != null; ) {
-                Entry<K, V> next = e.next;
-                int idx = indexFor(e.hash, newCapacity);
-                e.next = newTable[idx];
-                newTable[idx] = e;
-                e = next;
+        TreeEntry<K, V>[] oldRoots = roots;
+        table = (Entry<K, V>[]) new Entry[newCapacity];
+        roots = null;
+        threshold = (int) (newCapacity * loadFactor);
+
+        for (int i = 0; i < oldTable.length; i++) {
+            transferBucket(oldTable[i], oldRoots != null && oldRoots[i] != null);
+        }
+        RESIZE_TIMES.recordSince(start);
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private void startIncrementalResize() {
+        INCREMENTAL_RESIZES.increment();
+        finishResize();
+        oldTable = table;
+        oldRoots = roots;
+        transferIndex = 0;
+        table = (Entry<K, V>[]) new Entry[2 * oldTable.length];
+        roots = null;
+        threshold = (int) (table.length * loadFactor);
+    }
+
+    // Moves the old bucket of the given hash, so the caller only has to look at the
+    // new table, plus the next MIGRATION_STEP old buckets
+    private void helpResize(int h) {
+        if (oldTable == null) {
+            return;
+        }
+        int own = indexFor(h, oldTable.length);
+        if (oldTable[own] != null) {
+            transferOldBucket(own);
+        }
+        for (int n = 0; n < MIGRATION_STEP && transferIndex < oldTable.length; n++, transferIndex++) {
+            if (oldTable[transferIndex] != null) {
+                transferOldBucket(transferIndex);
             }
         }
-        table = newTable;
-        threshold = (int) (newCapacity * loadFactor);
+        if (transferIndex == oldTable.length) {
+            oldTable = null;
+            oldRoots = null;
+        }
+    }
+
+    private void transferOldBucket(int idx) {
+        transferBucket(oldTable[idx], oldRoots != null && oldRoots[idx] != null);
+        oldTable[idx] = null;
+    }
+
+    // Completes a running incremental resize; done before anything walks the whole table
+    private void finishResize() {
+        if (oldTable == null) {
+            return;
+        }
+        for (; transferIndex < oldTable.length; transferIndex++) {
+            if (oldTable[transferIndex] != null) {
+                transferOldBucket(transferIndex);
+            }
+        }
+        oldTable = null;
+        oldRoots = null;
+    }
+
+    // Relinks one chain of an old table into the current one. Only the buckets a former
+    // tree spills into can be long enough to be treeified again.
+    private void transferBucket(Entry<K, V> head, boolean wasTree) {
+        int firstIdx = -1;
+        int secondIdx = -1;
+        for (Entry<K, V> e = head; e != null; ) {
+            Entry<K, V> next = e.next;
+            int idx = indexFor(e.hash, table.length);
+            e.next = table[idx];
+            table[idx] = e;
+            if (firstIdx < 0) {
+                firstIdx = idx;
+            } else if (idx != firstIdx) {
+                secondIdx = idx;
+            }
+            e = next;
+        }
+        if (wasTree && table.length >= MIN_TREEIFY_CAPACITY) {
+            if (firstIdx >= 0 && chainLength(table[firstIdx], TREEIFY_THRESHOLD) >= TREEIFY_THRESHOLD) {
+                treeify(firstIdx);
+            }
+            if (secondIdx >= 0 && chainLength(table[secondIdx], TREEIFY_THRESHOLD) >= TREEIFY_THRESHOLD) {
+                treeify(secondIdx);
+            }
+        }
+    }
+
+    private static int chainLength(Entry<?, ?> head, int limit) {
+        int n = 0;
+        for (Entry<?, ?> e = head; e != null && n < limit; e = e.next) {
+            n++;
+        }
+        return n;
+    }
+
+    // ---- treeified buckets ----
+
+    private TreeEntry<K, V> rootAt(int idx) {
+        return roots == null ? null : roots[idx];
+    }
+
+    private void treeifyBin(int idx) {
+        if (table.length < MIN_TREEIFY_CAPACITY) {
+            resize(2 * table.length);
+        } else {
+            treeify(idx);
+        }
+    }
+
+    // Replaces the chain of bucket idx by TreeEntry nodes (kept as a doubly linked chain
+    // for iteration) and builds the tree over them
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private void treeify(int idx) {
+        if (roots == null) {
+            roots = (TreeEntry<K, V>[]) new TreeEntry[table.length];
+        }
+        TreeEntry<K, V> root = null;
+        TreeEntry<K, V> head = null;
+        TreeEntry<K, V> tail = null;
+        for (Entry<K, V> e = table[idx]; e != null; e = e.next) {
+            TreeEntry<K, V> t = e instanceof TreeEntry
+                    ? (TreeEntry<K, V>) e
+                    : new TreeEntry<>(e.hash, e.key, e.value, null);
+            t.prev = tail;
+            if (tail == null) {
+                head = t;
+            } else {
+                tail.next = t;
+            }
+            tail = t;
+        }
+        if (tail != null) {
+            tail.next = null;
+        }
+        for (TreeEntry<K, V> t = head; t != null; t = (TreeEntry<K, V>) t.next) {
+            root = insertIntoTree(root, t);
+        }
+        table[idx] = head;
+        roots[idx] = root;
+    }
+
+    private void removeTreeEntry(int idx, TreeEntry<K, V> root, TreeEntry<K, V> e) {
+        if (e.prev == null) {
+            table[idx] = e.next;
+        } else {
+            e.prev.next = e.next;
+        }
+        if (e.next != null) {
+            ((TreeEntry<K, V>) e.next).prev = e.prev;
+        }
+        root = deleteFromTree(root, e);
+        if (chainLength(table[idx], UNTREEIFY_THRESHOLD + 1) <= UNTREEIFY_THRESHOLD) {
+            // the TreeEntry nodes simply stay in the chain as plain entries
+            root = null;
+        }
+        roots[idx] = root;
+    }
+
+    private TreeEntry<K, V> findInTree(TreeEntry<K, V> node, int h, Object key) {
+        while (node != null) {
+            if (h < node.hash) {
+                node = node.left;
+            } else if (h > node.hash) {
+                node = node.right;
+            } else if (Objects.equals(key, node.key)) {
+                return node;
+            } else {
+                int c = compareComparables(key, node.key);
+                if (c < 0) {
+                    node = node.left;
+                } else if (c > 0) {
+                    node = node.right;
+                } else {
+                    // no usable order between the keys: the match may be on either side
+                    TreeEntry<K, V> found = findInTree(node.right, h, key);
+                    if (found != null) {
+                        return found;
+                    }
+                    node = node.left;
+                }
+            }
+        }
+        return null;
+    }
+
+    // Orders by hash, then by compareTo for mutually comparable keys, then by class
+    // name and identity hash. 0 only when nothing tells two different keys apart.
+    private static int order(int h1, Object k1, int h2, Object k2) {
+        if (h1 != h2) {
+            return h1 < h2 ? -1 : 1;
+        }
+        int c = compareComparables(k1, k2);
+        if (c != 0) {
+            return c;
+        }
+        if (k1 == null || k2 == null) {
+            return k1 == null ? (k2 == null ? 0 : -1) : 1;
+        }
+        c = k1.getClass().getName().compareTo(k2.getClass().getName());
+        if (c != 0) {
+            return c;
+        }
+        return Integer.compare(System.identityHashCode(k1), System.identityHashCode(k2));
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static int compareComparables(Object k1, Object k2) {
+        if (k1 == null || k2 == null || k1.getClass() != k2.getClass() || !(k1 instanceof Comparable)) {
+            return 0;
+        }
+        return ((Comparable) k1).compareTo(k2);
+    }
+
+    private TreeEntry<K, V> insertIntoTree(TreeEntry<K, V> node, TreeEntry<K, V> e) {
+        if (node == null) {
+            e.left = null;
+            e.right = null;
+            e.height = 1;
+            return e;
+        }
+        if (order(e.hash, e.key, node.hash, node.key) <= 0) {
+            node.left = insertIntoTree(node.left, e);
+        } else {
+            node.right = insertIntoTree(node.right, e);
+        }
+        return rebalance(node);
+    }
+
+    private TreeEntry<K, V> deleteFromTree(TreeEntry<K, V> node, TreeEntry<K, V> target) {
+        if (node == null) {
+            return null;
+        }
+        if (node == target) {
+            if (node.left == null) return node.right;
+            if (node.right == null) return node.left;
+            TreeEntry<K, V> successor = node.right;
+            while (successor.left != null) {
+                successor = successor.left;
+            }
+            successor.right = deleteMin(node.right);
+            successor.left = node.left;
+            return rebalance(successor);
+        }
+        int c = order(target.hash, target.key, node.hash, node.key);
+        if (c < 0 || (c == 0 && containsNode(node.left, target))) {
+            node.left = deleteFromTree(node.left, target);
+        } else {
+            node.right = deleteFromTree(node.right, target);
+        }
+        return rebalance(node);
+    }
+
+    private TreeEntry<K, V> deleteMin(TreeEntry<K, V> node) {
+        if (node.left == null) {
+            return node.right;
+        }
+        node.left = deleteMin(node.left);
+        return rebalance(node);
+    }
+
+    private static boolean containsNode(TreeEntry<?, ?> node, TreeEntry<?, ?> target) {
+        if (node == null) return false;
+        return node == target || containsNode(node.left, target) || containsNode(node.right, target);
+    }
+
+    private static int height(TreeEntry<?, ?> node) {
+        return node == null ? 0 : node.height;
+    }
+
+    private TreeEntry<K, V> rebalance(TreeEntry<K, V> node) {
+        int balance = height(node.left) - height(node.right);
+        if (balance > 1) {
+            if (height(node.left.left) < height(node.left.right)) {
+                node.left = rotateLeft(node.left);
+            }
+            return rotateRight(node);
+        }
+        if (balance < -1) {
+            if (height(node.right.right) < height(node.right.left)) {
+                node.right = rotateRight(node.right);
+            }
+            return rotateLeft(node);
+        }
+        node.height = Math.max(height(node.left), height(node.right)) + 1;
+        return node;
+    }
+
+    private TreeEntry<K, V> rotateRight(TreeEntry<K, V> node) {
+        TreeEntry<K, V> pivot = node.left;
+        node.left = pivot.right;
+        pivot.right = node;
+        node.height = Math.max(height(node.left), height(node.right)) + 1;
+        pivot.height = Math.max(height(pivot.left), height(pivot.right)) + 1;
+        return pivot;
+    }
+
+    private TreeEntry<K, V> rotateLeft(TreeEntry<K, V> node) {
+        TreeEntry<K, V> pivot = node.right;
+        node.right = pivot.left;
+        pivot.left = node;
+        node.height = Math.max(height(node.left), height(node.right)) + 1;
+        pivot.height = Math.max(height(pivot.left), height(pivot.right)) + 1;
+        return pivot;
     }
 
     @Override
     public String toString() {
+        finishResize();
         StringBuilder sb = new StringBuilder("{");
         boolean first = true;
         for (Entry<K, V> bucket : table) {
@@ -193,6 +577,17 @@ public class MyMap<K, V> extends AbstractMyCollection {
             return old;
         }
     }
+
+    private static class TreeEntry<K, V> extends Entry<K, V> {
+        TreeEntry<K, V> left;
+        TreeEntry<K, V> right;
+        Entry<K, V> prev;
+        int height;
+
+        TreeEntry(int hash, K key, V value, Entry<K, V> next) {
+            super(hash, key, value, next);
+        }
+    }
     
     public java.util.Iterator<java.util.Map.Entry<K, V>> entryIterator() {
         return new EntryItr();
@@ -222,6 +617,131 @@ public class MyMap<K, V> extends AbstractMyCollection {
         };
     }
 
+    public Spliterator<java.util.Map.Entry<K, V>> spliterator() {
+        return new TableSpliterator<>(e -> e, Spliterator.DISTINCT);
+    }
+
+    public Spliterator<K> keySpliterator() {
+        return new TableSpliterator<>(e -> e.key, Spliterator.DISTINCT);
+    }
+
+    public Spliterator<V> valueSpliterator() {
+        return new TableSpliterator<>(e -> e.value, 0);
+    }
+
+    public Stream<java.util.Map.Entry<K, V>> stream() {
+        return StreamSupport.stream(spliterator(), false);
+    }
+
+    public Stream<java.util.Map.Entry<K, V>> parallelStream() {
+        return StreamSupport.stream(spliterator(), true);
+    }
+
+    // Splits the table by bucket ranges. Only the unsplit spliterator knows its exact size;
+    // halves estimate half of their parent. A running incremental resize is finished when
+    // the range is bound, so every entry is in the current table.
+    private class TableSpliterator<T> implements Spliterator<T> {
+        private final Function<Entry<K, V>, T> view;
+        private final int distinct;
+        private Entry<K, V>[] tab;
+        private int index;
+        private int fence = -1;        // -1 until bound
+        private long est;
+        private int expectedModCount;
+        private Entry<K, V> current;   // next entry inside the bucket being walked
+
+        TableSpliterator(Function<Entry<K, V>, T> view, int distinct) {
+            this.view = view;
+            this.distinct = distinct;
+        }
+
+        private TableSpliterator(TableSpliterator<T> parent, int origin, int fence, long est) {
+            this.view = parent.view;
+            this.distinct = parent.distinct;
+            this.tab = parent.tab;
+            this.index = origin;
+            this.fence = fence;
+            this.est = est;
+            this.expectedModCount = parent.expectedModCount;
+        }
+
+        private int getFence() {
+            if (fence < 0) {
+                finishResize();
+                tab = table;
+                fence = tab.length;
+                est = size;
+                expectedModCount = modCount;
+            }
+            return fence;
+        }
+
+        @Override
+        public Spliterator<T> trySplit() {
+            int hi = getFence();
+            int lo = index;
+            int mid = (lo + hi) >>> 1;
+            if (lo >= mid || current != null) {
+                return null;
+            }
+            index = mid;
+            est >>>= 1;
+            return new TableSpliterator<>(this, lo, mid, est);
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super T> action) {
+            Objects.requireNonNull(action);
+            int hi = getFence();
+            while (current != null || index < hi) {
+                if (current == null) {
+                    current = tab[index++];
+                    continue;
+                }
+                Entry<K, V> e = current;
+                current = e.next;
+                action.accept(view.apply(e));
+                if (modCount != expectedModCount)
+                    throw new java.util.ConcurrentModificationException();
+                return true;
+            }
+            return false;
+        }
+
+        @Override
+        public void forEachRemaining(Consumer<? super T> action) {
+            Objects.requireNonNull(action);
+            int hi = getFence();
+            Entry<K, V> e = current;
+            current = null;
+            int i = index;
+            index = hi;
+            while (true) {
+                for (; e != null; e = e.next) {
+                    action.accept(view.apply(e));
+                }
+                if (i >= hi) {
+                    break;
+                }
+                e = tab[i++];
+            }
+            if (modCount != expectedModCount)
+                throw new java.util.ConcurrentModificationException();
+        }
+
+        @Override
+        public long estimateSize() {
+            getFence();
+            return est;
+        }
+
+        @Override
+        public int characteristics() {
+            int sized = fence < 0 || (index == 0 && fence == tab.length && current == null) ? Spliterator.SIZED : 0;
+            return sized | distinct;
+        }
+    }
+
     private class EntryItr implements java.util.Iterator<java.util.Map.Entry<K, V>> {
         private int bucketIndex = 0;
         private Entry<K, V> next;
@@ -229,6 +749,7 @@ public class MyMap<K, V> extends AbstractMyCollection {
         private int expectedModCount = modCount;
 
         EntryItr() {
+            finishResize();
             Entry<K, V>[] t = table;
             int len = t.length;
             Entry<K, V> e = null;
@@ -0,0 +1,82 @@
+package collections;
+
+// Bounded pool for deduplicating short, frequently repeated strings (vehicle models).
+// A string may sit in any of PROBES slots starting at its hash; when they are all taken
+// the one at the hash is evicted, so memory stays fixed however many distinct strings pass
+// through. Lookups hash and compare the characters in place; a String is only created on
+// a miss.
+//
+// Safe to share between threads without locking: a slot holds either an older or a newer
+// String, both immutable, and a miss at worst creates an extra copy.
+public class StringPool {
+    private static final int MAX_LENGTH = 64;
+    private static final int PROBES = 4;
+
+    private final String[] slots;
+    private final int mask;
+
+    public StringPool(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be > 0");
+        }
+        int cap = 1;
+        while (cap < capacity) cap <<= 1;
+        slots = new String[cap];
+        mask = cap - 1;
+    }
+
+    // The string of chars [start, end) of source; same hash as String.hashCode
+    public String get(CharSequence source, int start, int end) {
+        int length = end - start;
+        if (length == 0) return "";
+        if (length > MAX_LENGTH) return source.subSequence(start, end).toString();
+
+        int h = 0;
+        for (int i = start; i < end; i++) {
+            h = 31 * h + source.charAt(i);
+        }
+        int home = spread(h) & mask;
+        int free = -1;
+        for (int p = 0; p < PROBES; p++) {
+            int idx = (home + p) & mask;
+            String pooled = slots[idx];
+            if (pooled == null) {
+                if (free < 0) free = idx;
+            } else if (pooled.length() == length && pooled.hashCode() == h && matches(pooled, source, start)) {
+                return pooled;
+            }
+        }
+        String created = source.subSequence(start, end).toString();
+        slots[free >= 0 ? free : home] = created;
+        return created;
+    }
+
+    public String intern(String s) {
+        if (s == null || s.isEmpty() || s.length() > MAX_LENGTH) return s;
+        int home = spread(s.hashCode()) & mask;
+        int free = -1;
+        for (int p = 0; p < PROBES; p++) {
+            int idx = (home + p) & mask;
+            String pooled = slots[idx];
+            if (pooled == null) {
+                if (free < 0) free = idx;
+            } else if (s.equals(pooled)) {
+                return pooled;
+            }
+        }
+        slots[free >= 0 ? free : home] = s;
+        return s;
+    }
+
+    private static boolean matches(String pooled, CharSequence source, int start) {
+        for (int i = 0; i < pooled.length(); i++) {
+            if (pooled.charAt(i) != source.charAt(start + i)) return false;
+        }
+        return true;
+    }
+
+    private static int spread(int h) {
+        h *= 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
@@ -1,7 +1,6 @@
 package factory;
 
 import java.util.Date;
-import java.text.SimpleDateFormat;
 
 public abstract class AbstractVehicle {
     private long id;
@@ -9,7 +8,7 @@ public abstract class AbstractVehicle {
     private String model;
     private double enginePower;
     private int maxSpeed;
-    private Date releaseDate;
+    private int releaseEpochDay;    // EpochDays.NONE when unknown
     private double price;
 
     public AbstractVehicle(long id,
@@ -19,12 +18,22 @@ public abstract class AbstractVehicle {
                            int maxSpeed,
                            Date releaseDate,
                            double price) {
+        this(id, type, model, enginePower, maxSpeed, EpochDays.fromDate(releaseDate), price);
+    }
+
+    public AbstractVehicle(long id,
+                           VehicleType type,
+                           String model,
+                           double enginePower,
+                           int maxSpeed,
+                           int releaseEpochDay,
+                           double price) {
         this.id = id;
         this.type = type;
         this.model = model;
         this.enginePower = enginePower;
         this.maxSpeed = maxSpeed;
-        this.releaseDate = releaseDate;
+        this.releaseEpochDay = releaseEpochDay;
         this.price = price;
     }
 
@@ -68,12 +77,21 @@ public abstract class AbstractVehicle {
         this.maxSpeed = maxSpeed;
     }
 
+    public int getReleaseEpochDay() {
+        return releaseEpochDay;
+    }
+
+    public void setReleaseEpochDay(int releaseEpochDay) {
+        this.releaseEpochDay = releaseEpochDay;
+    }
+
+    // Date adapter: a new Date on every call, null when there is no date
     public Date getReleaseDate() {
-        return releaseDate;
+        return EpochDays.toDate(getReleaseEpochDay());
     }
 
     public void setReleaseDate(Date releaseDate) {
-        this.releaseDate = releaseDate;
+        setReleaseEpochDay(EpochDays.fromDate(releaseDate));
     }
 
     public double getPrice() {
@@ -85,19 +103,19 @@ public abstract class AbstractVehicle {
     }
 
     protected String formatDate(Date d) {
-        return new SimpleDateFormat("yyyy-MM-dd").format(d);
+        return EpochDays.format(EpochDays.fromDate(d));
     }
 
     @Override
     public String toString() {
         return "Vehicle{" +
-               "id=" + id +
-               ", type=" + type +
-               ", model='" + model + '\'' +
-               ", enginePower=" + enginePower +
-               ", maxSpeed=" + maxSpeed +
-               ", releaseDate=" + formatDate(releaseDate) +
-               ", price=" + price +
+               "id=" + getId() +
+               ", type=" + getType() +
+               ", model='" + getModel() + '\'' +
+               ", enginePower=" + getEnginePower() +
+               ", maxSpeed=" + getMaxSpeed() +
+               ", releaseDate=" + (getReleaseEpochDay() == EpochDays.NONE ? "null" : EpochDays.format(getReleaseEpochDay())) +
+               ", price=" + getPrice() +
                '}';
     }
 }
\ No newline at end of file
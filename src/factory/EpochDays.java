@@ -0,0 +1,153 @@
+package factory;
+
+import java.util.Calendar;
+import java.util.Date;
+import java.util.GregorianCalendar;
+
+// Dates as int days since 1970-01-01, with a yyyy-MM-dd parser and formatter that
+// allocate nothing and keep no state, so any number of threads can use them.
+//
+// A day is the calendar label (year, month, day) counted on the proleptic Gregorian
+// calendar. The Date adapters go through GregorianCalendar in the default time zone,
+// which is what SimpleDateFormat did, so a label read from a Date and written back
+// comes out the same, also for dates before the 1582 calendar switch.
+public final class EpochDays {
+    public static final int NONE = Integer.MIN_VALUE;      // no date
+    public static final int INVALID = Integer.MIN_VALUE + 1; // returned by parse
+
+    private EpochDays() {
+    }
+
+    public static int of(int year, int month, int day) {
+        int y = month <= 2 ? year - 1 : year;
+        int era = (y >= 0 ? y : y - 399) / 400;
+        int yoe = y - era * 400;
+        int doy = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+        int doe = yoe * 365 + yoe / 4 - yoe / 100 + doy;
+        return era * 146097 + doe - 719468;
+    }
+
+    public static int parse(CharSequence s) {
+        return parse(s, 0, s.length());
+    }
+
+    // Strict yyyy-MM-dd with a real date, years 1583..9999; INVALID for anything else
+    public static int parse(CharSequence s, int start, int end) {
+        if (end - start != 10 || s.charAt(start + 4) != '-' || s.charAt(start + 7) != '-') {
+            return INVALID;
+        }
+        int year = digits(s, start, 4);
+        int month = digits(s, start + 5, 2);
+        int day = digits(s, start + 8, 2);
+        if (year < 1583 || month < 1 || month > 12 || day < 1 || day > lengthOfMonth(year, month)) {
+            return INVALID;
+        }
+        return of(year, month, day);
+    }
+
+    private static int digits(CharSequence s, int start, int count) {
+        int value = 0;
+        for (int i = start; i < start + count; i++) {
+            int d = s.charAt(i) - '0';
+            if (d < 0 || d > 9) return -1;
+            value = value * 10 + d;
+        }
+        return value;
+    }
+
+    public static int lengthOfMonth(int year, int month) {
+        switch (month) {
+            case 2:
+                boolean leap = (year & 3) == 0 && (year % 100 != 0 || year % 400 == 0);
+                return leap ? 29 : 28;
+            case 4:
+            case 6:
+            case 9:
+            case 11:
+                return 30;
+            default:
+                return 31;
+        }
+    }
+
+    public static String format(int epochDay) {
+        if (epochDay == NONE) return "";
+        StringBuilder sb = new StringBuilder(10);
+        format(epochDay, sb);
+        return sb.toString();
+    }
+
+    // Appends yyyy-MM-dd (years are padded to four digits)
+    public static void format(int epochDay, StringBuilder sb) {
+        long civil = civil(epochDay);
+        int year = year(civil);
+        int month = month(civil);
+        int day = day(civil);
+        if (year < 0) {
+            sb.append('-');
+            year = -year;
+        }
+        if (year < 1000) sb.append('0');
+        if (year < 100) sb.append('0');
+        if (year < 10) sb.append('0');
+        sb.append(year).append('-');
+        if (month < 10) sb.append('0');
+        sb.append(month).append('-');
+        if (day < 10) sb.append('0');
+        sb.append(day);
+    }
+
+    // year << 16 | month << 8 | day
+    private static long civil(int epochDay) {
+        int z = epochDay + 719468;
+        int era = (z >= 0 ? z : z - 146096) / 146097;
+        int doe = z - era * 146097;
+        int yoe = (doe - doe / 1460 + doe / 36524 - doe / 146096) / 365;
+        int doy = doe - (365 * yoe + yoe / 4 - yoe / 100);
+        int mp = (5 * doy + 2) / 153;
+        int day = doy - (153 * mp + 2) / 5 + 1;
+        int month = mp < 10 ? mp + 3 : mp - 9;
+        long year = yoe + (long) era * 400 + (month <= 2 ? 1 : 0);
+        return year << 16 | month << 8 | day;
+    }
+
+    private static int year(long civil) {
+        return (int) (civil >> 16);
+    }
+
+    private static int month(long civil) {
+        return (int) (civil >> 8) & 0xFF;
+    }
+
+    private static int day(long civil) {
+        return (int) civil & 0xFF;
+    }
+
+    public static int fromDate(Date date) {
+        if (date == null) return NONE;
+        GregorianCalendar calendar = new GregorianCalendar();
+        calendar.setTime(date);
+        int year = calendar.get(Calendar.YEAR);
+        if (calendar.get(Calendar.ERA) == GregorianCalendar.BC) {
+            year = 1 - year;
+        }
+        return of(year, calendar.get(Calendar.MONTH) + 1, calendar.get(Calendar.DAY_OF_MONTH));
+    }
+
+    public static Date toDate(int epochDay) {
+        if (epochDay == NONE) return null;
+        long civil = civil(epochDay);
+        int year = year(civil);
+        GregorianCalendar calendar = new GregorianCalendar();
+        calendar.clear();
+        if (year <= 0) {
+            calendar.set(Calendar.ERA, GregorianCalendar.BC);
+            calendar.set(Calendar.YEAR, 1 - year);
+        } else {
+            calendar.set(Calendar.YEAR, year);
+        }
+        calendar.set(Calendar.MONTH, month(civil) - 1);
+        calendar.set(Calendar.DAY_OF_MONTH, day(civil));
+        return calendar.getTime();
+    }
+}
@@ -11,4 +11,13 @@ public class Moped extends AbstractVehicle {
                  double price) {
         super(id, VehicleType.MOPED, model, enginePower, maxSpeed, releaseDate, price);
     }
+
+    public Moped(long id,
+                 String model,
+                 double enginePower,
+                 int maxSpeed,
+                 int releaseEpochDay,
+                 double price) {
+        super(id, VehicleType.MOPED, model, enginePower, maxSpeed, releaseEpochDay, price);
+    }
 }
\ No newline at end of file
@@ -11,4 +11,13 @@ public class Motorcycle extends AbstractVehicle {
                       double price) {
         super(id, VehicleType.MOTORCYCLE, model, enginePower, maxSpeed, releaseDate, price);
     }
+
+    public Motorcycle(long id,
+                      String model,
+                      double enginePower,
+                      int maxSpeed,
+                      int releaseEpochDay,
+                      double price) {
+        super(id, VehicleType.MOTORCYCLE, model, enginePower, maxSpeed, releaseEpochDay, price);
+    }
 }
\ No newline at end of file
@@ -11,4 +11,13 @@ public class Quadricycle extends AbstractVehicle {
                        double price) {
         super(id, VehicleType.QUADRICYCLE, model, enginePower, maxSpeed, releaseDate, price);
     }
+
+    public Quadricycle(long id,
+                       String model,
+                       double enginePower,
+                       int maxSpeed,
+                       int releaseEpochDay,
+                       double price) {
+        super(id, VehicleType.QUADRICYCLE, model, enginePower, maxSpeed, releaseEpochDay, price);
+    }
 }
\ No newline at end of file
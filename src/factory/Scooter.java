@@ -11,4 +11,13 @@ public class Scooter extends AbstractVehicle {
                    double price) {
         super(id, VehicleType.SCOOTER, model, enginePower, maxSpeed, releaseDate, price);
     }
+
+    public Scooter(long id,
+                   String model,
+                   double enginePower,
+                   int maxSpeed,
+                   int releaseEpochDay,
+                   double price) {
+        super(id, VehicleType.SCOOTER, model, enginePower, maxSpeed, releaseEpochDay, price);
+    }
 }
\ No newline at end of file
@@ -1,8 +1,12 @@
 package factory;
 
+import collections.StringPool;
+
 import java.util.Date;
 
 public class VehicleFactory {
+    // Shared by every vehicle: the fleet has far fewer models than rows
+    public static final StringPool MODELS = new StringPool(8192);
 
     public static Motorcycle createMotorcycle(long id,
                                               String model,
@@ -10,7 +14,16 @@ public class VehicleFactory {
                                               int maxSpeed,
                                               Date releaseDate,
                                               double price) {
-        return new Motorcycle(id, model, enginePower, maxSpeed, releaseDate, price);
+        return createMotorcycle(id, model, enginePower, maxSpeed, EpochDays.fromDate(releaseDate), price);
+    }
+
+    public static Motorcycle createMotorcycle(long id,
+                                              String model,
+                                              double enginePower,
+                                              int maxSpeed,
+                                              int releaseEpochDay,
+                                              double price) {
+        return new Motorcycle(id, MODELS.intern(model), enginePower, maxSpeed, releaseEpochDay, price);
     }
 
     public static Quadricycle createQuadricycle(long id,
@@ -19,7 +32,16 @@ public class VehicleFactory {
                                                 int maxSpeed,
                                                 Date releaseDate,
                                                 double price) {
-        return new Quadricycle(id, model, enginePower, maxSpeed, releaseDate, price);
+        return createQuadricycle(id, model, enginePower, maxSpeed, EpochDays.fromDate(releaseDate), price);
+    }
+
+    public static Quadricycle createQuadricycle(long id,
+                                                String model,
+                                                double enginePower,
+                                                int maxSpeed,
+                                                int releaseEpochDay,
+                                                double price) {
+        return new Quadricycle(id, MODELS.intern(model), enginePower, maxSpeed, releaseEpochDay, price);
     }
 
     public static Moped createMoped(long id,
@@ -28,7 +50,16 @@ public class VehicleFactory {
                                     int maxSpeed,
                                     Date releaseDate,
                                     double price) {
-        return new Moped(id, model, enginePower, maxSpeed, releaseDate, price);
+        return createMoped(id, model, enginePower, maxSpeed, EpochDays.fromDate(releaseDate), price);
+    }
+
+    public static Moped createMoped(long id,
+                                    String model,
+                                    double enginePower,
+                                    int maxSpeed,
+                                    int releaseEpochDay,
+                                    double price) {
+        return new Moped(id, MODELS.intern(model), enginePower, maxSpeed, releaseEpochDay, price);
     }
 
     public static Scooter createScooter(long id,
@@ -37,6 +68,46 @@ public class VehicleFactory {
                                         int maxSpeed,
                                         Date releaseDate,
                                         double price) {
-        return new Scooter(id, model, enginePower, maxSpeed, releaseDate, price);
+        return createScooter(id, model, enginePower, maxSpeed, EpochDays.fromDate(releaseDate), price);
+    }
+
+    public static Scooter createScooter(long id,
+                                        String model,
+                                        double enginePower,
+                                        int maxSpeed,
+                                        int releaseEpochDay,
+                                        double price) {
+        return new Scooter(id, MODELS.intern(model), enginePower, maxSpeed, releaseEpochDay, price);
+    }
+
+    public static AbstractVehicle createVehicle(VehicleType type,
+                                                long id,
+                                                String model,
+                                                double enginePower,
+                                                int maxSpeed,
+                                                Date releaseDate,
+                                                double price) {
+        return createVehicle(type, id, model, enginePower, maxSpeed, EpochDays.fromDate(releaseDate), price);
+    }
+
+    public static AbstractVehicle createVehicle(VehicleType type,
+                                                long id,
+                                                String model,
+                                                double enginePower,
+                                                int maxSpeed,
+                                                int releaseEpochDay,
+                                                double price) {
+        switch (type) {
+            case MOTORCYCLE:
+                return createMotorcycle(id, model, enginePower, maxSpeed, releaseEpochDay, price);
+            case QUADRICYCLE:
+                return createQuadricycle(id, model, enginePower, maxSpeed, releaseEpochDay, price);
+            case MOPED:
+                return createMoped(id, model, enginePower, maxSpeed, releaseEpochDay, price);
+            case SCOOTER:
+                return createScooter(id, model, enginePower, maxSpeed, releaseEpochDay, price);
+            default:
+                throw new IllegalStateException("Неизвестный тип " + type);
+        }
     }
 }
\ No newline at end of file
@@ -1,8 +1,14 @@
 package launch;
 
 import java.io.*;
+import collections.MyIndexedCollection;
+import collections.MyList;
+import factory.AbstractVehicle;
+import metrics.Metrics;
 import utils.ConsoleMenu;
+import utils.PersistenceMode;
 import utils.VehicleConsoleCrudManager;
+import utils.VehicleTable;
 
 public class Main {
 
@@ -10,16 +16,42 @@ public class Main {
 
 		String dataFile = "dataFile.txt";
 		String logFile = "log.log";
+		// -Dpersistence=FULL_REWRITE|JOURNAL|ASYNC
+		PersistenceMode mode = PersistenceMode.valueOf(System.getProperty("persistence", "FULL_REWRITE"));
+		// -Dstore=table keeps the vehicles in columns instead of one object each
+		MyIndexedCollection<AbstractVehicle> store = "table".equals(System.getProperty("store"))
+				? new VehicleTable() : new MyList<>();
+
+		// -Dmetrics.file=<path> [-Dmetrics.period=<ms>] rewrites a metrics report periodically
+		String metricsFile = System.getProperty("metrics.file");
+		if (metricsFile != null) {
+			Metrics.startDump(metricsFile, Long.getLong("metrics.period", 10_000L));
+		}
+
+		// Main --batch [commands-file|-] [batch-size]: runs the commands without the menu
+		if (args.length > 0 && "--batch".equals(args[0])) {
+			String commandFile = args.length > 1 ? args[1] : "-";
+			int batchSize = args.length > 2 ? Integer.parseInt(args[2]) : VehicleConsoleCrudManager.DEFAULT_BATCH_SIZE;
+			VehicleConsoleCrudManager manager = new VehicleConsoleCrudManager(dataFile, logFile, mode, store);
+			manager.runBatch(commandFile, batchSize);
+			manager.close();
+			Metrics.stopDump();
+			return;
+		}
 		
 		ConsoleMenu menu = new ConsoleMenu();
-		VehicleConsoleCrudManager manager = new VehicleConsoleCrudManager(dataFile, logFile);
+		VehicleConsoleCrudManager manager = new VehicleConsoleCrudManager(dataFile, logFile, mode, store);
 
 		menu.addItem("1", "Добавить транспорт", () -> manager.addVehicle());
 		menu.addItem("2", "Обновить транспорт", () -> manager.updateVehicle());
 		menu.addItem("3", "Удалить транспорт", () -> manager.deleteVehicle());
 		menu.addItem("4", "Показать все", () -> manager.listVehicles());
+		menu.addItem("5", "Запрос", () -> manager.queryVehicles());
+		menu.addItem("6", "Метрики", () -> manager.showMetrics());
 		menu.addItem("0", "Выход", () -> {
-		    manager.persist();
+		    manager.flush();
+		    manager.close();
+		    Metrics.stopDump();
 		});
 
 		menu.run();
@@ -0,0 +1,25 @@
+package metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+// Running total; increments from several threads do not contend
+public class Counter {
+    private final LongAdder count = new LongAdder();
+
+    public void increment() {
+        count.increment();
+    }
+
+    public void add(long n) {
+        count.add(n);
+    }
+
+    public long get() {
+        return count.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "count=" + get();
+    }
+}
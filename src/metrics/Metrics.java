@@ -0,0 +1,114 @@
+package metrics;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.DoubleSupplier;
+
+// Process-wide registry of named counters, latency histograms and gauges. Instrumented
+// code looks its metrics up once, into static fields, and then only records. The report
+// lists every metric sorted by name; it can also be written to a file periodically.
+public final class Metrics {
+    private static final Map<String, Object> METRICS = new ConcurrentSkipListMap<>();
+    private static ScheduledExecutorService dumper;
+    private static String dumpFile;
+
+    private Metrics() {
+    }
+
+    public static Counter counter(String name) {
+        return lookup(name, Counter.class, new Counter());
+    }
+
+    public static LatencyHistogram histogram(String name) {
+        return lookup(name, LatencyHistogram.class, new LatencyHistogram());
+    }
+
+    // Read when a report is made; registering the name again replaces the supplier
+    public static void gauge(String name, DoubleSupplier value) {
+        // built with its supplier, so a concurrent report never sees a gauge without one
+        Gauge gauge = lookup(name, Gauge.class, new Gauge(value));
+        gauge.value = value;
+    }
+
+    private static <T> T lookup(String name, Class<T> type, T created) {
+        Object existing = METRICS.putIfAbsent(name, created);
+        Object metric = existing == null ? created : existing;
+        if (!type.isInstance(metric)) {
+            throw new IllegalArgumentException("Metric " + name + " is a " + metric.getClass().getSimpleName());
+        }
+        return type.cast(metric);
+    }
+
+    public static String report() {
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, Object> e : METRICS.entrySet()) {
+            sb.append(e.getKey()).append(' ').append(e.getValue()).append(System.lineSeparator());
+        }
+        return sb.toString();
+    }
+
+    // Written to a temp file that replaces the target, so readers never see half a report
+    public static void writeReport(String path) throws IOException {
+        Path target = Paths.get(path).toAbsolutePath();
+        Path tmp = target.resolveSibling(target.getFileName() + ".tmp");
+        Files.write(tmp, report().getBytes(StandardCharsets.UTF_8));
+        Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // Rewrites the report every periodMillis on a daemon thread, until stopDump
+    public static synchronized void startDump(String path, long periodMillis) {
+        stopDump();
+        dumpFile = path;
+        dumper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "metrics-dump");
+            t.setDaemon(true);
+            return t;
+        });
+        // any exception escaping the task would cancel the later runs
+        dumper.scheduleAtFixedRate(() -> {
+            try {
+                writeReport(path);
+            } catch (IOException | RuntimeException e) {
+                System.err.println("Ошибка записи метрик: " + e.getMessage());
+            }
+        }, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    // Stops the periodic dump and writes the report one last time
+    public static synchronized void stopDump() {
+        if (dumper == null) return;
+        dumper.shutdownNow();
+        try {
+            dumper.awaitTermination(1, TimeUnit.SECONDS);
+            writeReport(dumpFile);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            System.err.println("Ошибка записи метрик: " + e.getMessage());
+        }
+        dumper = null;
+    }
+
+    private static final class Gauge {
+        volatile DoubleSupplier value;
+
+        Gauge(DoubleSupplier value) {
+            this.value = value;
+        }
+
+        @Override
+        public String toString() {
+            double v = value.getAsDouble();
+            return v == Math.rint(v) && Math.abs(v) < 1e15 ? "value=" + (long) v : String.format("value=%.3f", v);
+        }
+    }
+}
@@ -5,4 +5,7 @@
  * 
  */
 module PP_laba3 {
-}
\ No newline at end of file
+    // only bench.ParseBenchmark uses them, and it runs without them
+    requires static java.management;
+    requires static jdk.management;
+}
@@ -2,11 +2,123 @@ package utils;
 
 import collections.MyList;
 
+import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.*;
+import java.util.zip.CRC32;
 
 public class FileTextUtils {
+    private static final int READ_BUFFER_SIZE = 1 << 16;
+
+    // Strict UTF-8 like Files.readAllLines, but lines are pulled one at a time
+    public static BufferedReader newReader(String path) throws IOException {
+        return new BufferedReader(
+                new InputStreamReader(Files.newInputStream(Paths.get(path)), StandardCharsets.UTF_8.newDecoder()),
+                READ_BUFFER_SIZE);
+    }
+
+    // Lines as views over a read-only mapping of the file; no byte[] or String per line
+    public static MappedTextFile mapLines(String path) throws IOException {
+        return new MappedTextFile(path);
+    }
+
+    // Same as newReader, limited to the bytes [start, end) of the file
+    public static BufferedReader newReader(String path, long start, long end) throws IOException {
+        FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ);
+        return new BufferedReader(
+                new InputStreamReader(new RangeInputStream(channel, start, end), StandardCharsets.UTF_8.newDecoder()),
+                READ_BUFFER_SIZE);
+    }
+
+    // Splits the file into at most maxChunks byte ranges, each ending right after a '\n'
+    // (except the last one). Returns the boundaries: 0, b1, ..., file size.
+    public static long[] splitOnLines(String path, int maxChunks, long minChunkSize) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ)) {
+            long size = channel.size();
+            int chunks = (int) Math.max(1, Math.min(maxChunks, size / Math.max(1, minChunkSize)));
+            long[] bounds = new long[chunks + 1];
+            int count = 1;
+            ByteBuffer buf = ByteBuffer.allocate(8192);
+            for (int k = 1; k < chunks; k++) {
+                long pos = Math.max(size * k / chunks, bounds[count - 1]);
+                long boundary = indexOf(channel, (byte) '\n', pos, buf);
+                if (boundary < 0) break;
+                boundary++;
+                if (boundary >= size) break;
+                if (boundary > bounds[count - 1]) {
+                    bounds[count++] = boundary;
+                }
+            }
+            bounds[count++] = size;
+            return count == bounds.length ? bounds : java.util.Arrays.copyOf(bounds, count);
+        }
+    }
+
+    // Number of lines BufferedReader.readLine() would return for the bytes [start, end)
+    public static int countLines(String path, long start, long end) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ)) {
+            ByteBuffer buf = ByteBuffer.allocate(READ_BUFFER_SIZE);
+            int lines = 0;
+            boolean afterCr = false;
+            boolean inLine = false;
+            long pos = start;
+            while (pos < end) {
+                buf.clear();
+                buf.limit((int) Math.min(buf.capacity(), end - pos));
+                int n = channel.read(buf, pos);
+                if (n < 0) break;
+                pos += n;
+                for (int i = 0; i < n; i++) {
+                    byte b = buf.get(i);
+                    if (b == '\n') {
+                        if (!afterCr) lines++;
+                        afterCr = false;
+                        inLine = false;
+                    } else if (b == '\r') {
+                        lines++;
+                        afterCr = true;
+                        inLine = false;
+                    } else {
+                        afterCr = false;
+                        inLine = true;
+                    }
+                }
+            }
+            return inLine ? lines + 1 : lines;
+        }
+    }
+
+    // CRC32 of the whole file
+    public static long checksum(String path) throws IOException {
+        CRC32 crc = new CRC32();
+        try (FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ)) {
+            ByteBuffer buf = ByteBuffer.allocate(READ_BUFFER_SIZE);
+            while (channel.read(buf) >= 0) {
+                buf.flip();
+                crc.update(buf);
+                buf.clear();
+            }
+        }
+        return crc.getValue();
+    }
+
+    private static long indexOf(FileChannel channel, byte target, long from, ByteBuffer buf) throws IOException {
+        long pos = from;
+        while (true) {
+            buf.clear();
+            int n = channel.read(buf, pos);
+            if (n <= 0) return -1;
+            for (int i = 0; i < n; i++) {
+                if (buf.get(i) == target) return pos + i;
+            }
+            pos += n;
+        }
+    }
 
     public static MyList<String> readLines(String path) throws IOException {
         java.util.List<String> javaLines = Files.readAllLines(Paths.get(path), StandardCharsets.UTF_8);
@@ -31,6 +143,15 @@ public class FileTextUtils {
                 StandardOpenOption.TRUNCATE_EXISTING);
     }
 
+    // Writes a sibling temp file and renames it over path, so path always holds either the
+    // old or the new content
+    public static void writeLinesAtomically(MyList<String> lines, String path) throws IOException {
+        Path target = Paths.get(path).toAbsolutePath();
+        Path tmp = target.resolveSibling(target.getFileName() + ".tmp");
+        writeLines(lines, tmp.toString());
+        Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
     public static String readAll(String path) throws IOException {
         byte[] all = Files.readAllBytes(Paths.get(path));
         return new String(all, StandardCharsets.UTF_8);
@@ -42,4 +163,35 @@ public class FileTextUtils {
                 StandardOpenOption.CREATE,
                 StandardOpenOption.TRUNCATE_EXISTING);
     }
+
+    private static class RangeInputStream extends InputStream {
+        private final FileChannel channel;
+        private final long end;
+        private long pos;
+
+        RangeInputStream(FileChannel channel, long start, long end) {
+            this.channel = channel;
+            this.pos = start;
+            this.end = end;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) < 0 ? -1 : one[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (pos >= end) return -1;
+            int n = channel.read(ByteBuffer.wrap(b, off, (int) Math.min(len, end - pos)), pos);
+            if (n > 0) pos += n;
+            return n;
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
 }
\ No newline at end of file
@@ -0,0 +1,183 @@
+package utils;
+
+import collections.MyIterable;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+// Read-only mapping of a text file, walked line by line. Files larger than one
+// segment are mapped piece by piece; every segment ends right after a '\n', so
+// a line never spans two mappings. Line terminators are the ones
+// BufferedReader.readLine() accepts: "\n", "\r" and "\r\n".
+//
+// An ASCII line comes out as a Line over the mapped bytes; any other line is decoded to a
+// String, strictly like FileTextUtils.newReader, so malformed UTF-8 fails with an
+// UncheckedIOException wrapping a CharacterCodingException.
+public class MappedTextFile implements MyIterable<CharSequence>, Closeable {
+    public static final long DEFAULT_SEGMENT_SIZE = 1L << 30;
+
+    private final FileChannel channel;
+    private final long size;
+    private final long segmentSize;
+
+    public MappedTextFile(String path) throws IOException {
+        this(path, DEFAULT_SEGMENT_SIZE);
+    }
+
+    public MappedTextFile(String path, long segmentSize) throws IOException {
+        if (segmentSize <= 0 || segmentSize > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("segmentSize must be in (0, " + Integer.MAX_VALUE + "]");
+        }
+        this.channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ);
+        this.size = channel.size();
+        this.segmentSize = segmentSize;
+    }
+
+    public long size() {
+        return size;
+    }
+
+    // A returned Line is reused by the iterator: copy it (toString) to keep it
+    @Override
+    public Iterator<CharSequence> iterator() {
+        return new LineItr();
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private MappedByteBuffer mapSegment(long start) throws IOException {
+        long length = Math.min(segmentSize, size - start);
+        MappedByteBuffer segment = channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+        if (start + length < size) {
+            int end = (int) length;
+            while (end > 0 && segment.get(end - 1) != '\n') end--;
+            if (end == 0) {
+                throw new IOException("Line at offset " + start + " is longer than segment size " + segmentSize);
+            }
+            segment.limit(end);
+        }
+        return segment;
+    }
+
+    private class LineItr implements Iterator<CharSequence> {
+        private final Line line = new Line();
+        private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder();
+        private MappedByteBuffer segment;
+        private long nextSegmentStart = 0;
+        private int pos;
+        private boolean ready;
+        private boolean ascii;
+
+        @Override
+        public boolean hasNext() {
+            if (!ready) {
+                ready = advance();
+            }
+            return ready;
+        }
+
+        @Override
+        public CharSequence next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            ready = false;
+            return ascii ? line : decode(decoder, line);
+        }
+
+        private boolean advance() {
+            while (segment == null || pos >= segment.limit()) {
+                if (nextSegmentStart >= size) return false;
+                try {
+                    segment = mapSegment(nextSegmentStart);
+                } catch (IOException ex) {
+                    throw new UncheckedIOException(ex);
+                }
+                nextSegmentStart += segment.limit();
+                pos = 0;
+            }
+            int limit = segment.limit();
+            int i = pos;
+            int bits = 0;
+            while (i < limit) {
+                byte b = segment.get(i);
+                if (b == '\n' || b == '\r') break;
+                bits |= b;
+                i++;
+            }
+            line.set(segment, pos, i - pos);
+            // a byte >= 0x80 is negative
+            ascii = bits >= 0;
+            if (i < limit) {
+                if (segment.get(i) == '\r' && i + 1 < limit && segment.get(i + 1) == '\n') i++;
+                i++;
+            }
+            pos = i;
+            return true;
+        }
+    }
+
+    private static String decode(CharsetDecoder decoder, Line line) {
+        try {
+            return decoder.decode(line.buffer.slice(line.offset, line.length)).toString();
+        } catch (CharacterCodingException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    // CharSequence view over bytes of the mapping. charAt() widens single bytes, which is
+    // exact for the ASCII lines it is used for; toString() decodes UTF-8 strictly.
+    public static class Line implements CharSequence {
+        private ByteBuffer buffer;
+        private int offset;
+        private int length;
+
+        void set(ByteBuffer buffer, int offset, int length) {
+            this.buffer = buffer;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        @Override
+        public int length() {
+            return length;
+        }
+
+        @Override
+        public char charAt(int index) {
+            if (index < 0 || index >= length) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + length);
+            }
+            return (char) (buffer.get(offset + index) & 0xFF);
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            if (start < 0 || end > length || start > end) {
+                throw new IndexOutOfBoundsException("start " + start + ", end " + end + ", length " + length);
+            }
+            Line sub = new Line();
+            sub.set(buffer, offset + start, end - start);
+            return sub;
+        }
+
+        @Override
+        public String toString() {
+            return decode(StandardCharsets.UTF_8.newDecoder(), this);
+        }
+    }
+}
@@ -0,0 +1,307 @@
+package utils;
+
+import collections.MyList;
+import collections.MyMap;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.StringReader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+// Where parse problems go. A report is a line number, a category and field to aggregate
+// by, and the message; the log line is "Line N: message".
+//   toFile  - every line, streamed through a bounded buffer, separated like writeLines;
+//   summary - a count per category and field plus the first lines of each, written on
+//             close, so memory does not grow with the number of errors;
+//   forEach - every line handed to a consumer.
+// A write error is kept and thrown by close(), so reporting never throws.
+//
+// For parallel parsing the file and summary sinks are Forkable: fork() gives each chunk its
+// own sink and join() folds the chunks back in file order. A chunk numbers its lines from 1 and join() adds the lines before it.
+// A chunk of a file sink keeps at most CHUNK_BUFFER chars in memory and spills the rest to
+// a temp file.
+public abstract class ParseErrorSink implements Closeable {
+    public enum Category {
+        FIELD_COUNT, INVALID_TYPE, EMPTY_MODEL, INVALID_NUMBER, PARSE_ERROR, INVALID_DATE, EMPTY_DATE, JOURNAL
+    }
+
+    private static final String SEPARATOR = System.lineSeparator();
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final int CHUNK_BUFFER = 1 << 16;
+
+    protected long count;
+    protected IOException failure;
+
+    public static Forkable toFile(String path) throws IOException {
+        return new FileSink(path);
+    }
+
+    public static Forkable summary(String path, int samples) {
+        return new SummarySink(path, samples);
+    }
+
+    public static ParseErrorSink forEach(Consumer<String> lines) {
+        return new ConsumerSink(lines);
+    }
+
+    public void report(int lineNo, Category category, String field, String message) {
+        count++;
+        accept(lineNo, category, field, message);
+    }
+
+    protected abstract void accept(int lineNo, Category category, String field, String message);
+
+    public long count() {
+        return count;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (failure != null) throw failure;
+    }
+
+    static String format(int lineNo, String message) {
+        return "Line " + lineNo + ": " + message;
+    }
+
+    private static Writer newWriter(Path path) throws IOException {
+        return new BufferedWriter(new OutputStreamWriter(Files.newOutputStream(path), StandardCharsets.UTF_8), BUFFER_SIZE);
+    }
+
+    public abstract static class Forkable extends ParseErrorSink {
+        // A sink for one chunk of the input, to be join()ed back in order
+        public abstract ParseErrorSink fork() throws IOException;
+
+        // chunk must come from fork() of this sink
+        public abstract void join(ParseErrorSink chunk, int linesBefore) throws IOException;
+    }
+
+    private static final class FileSink extends Forkable {
+        private final Writer out;
+        private boolean empty = true;
+
+        FileSink(String path) throws IOException {
+            out = newWriter(Paths.get(path));
+        }
+
+        @Override
+        protected void accept(int lineNo, Category category, String field, String message) {
+            if (failure != null) return;
+            try {
+                if (!empty) out.write(SEPARATOR);
+                out.write("Line ");
+                out.write(Integer.toString(lineNo));
+                out.write(": ");
+                out.write(message);
+                empty = false;
+            } catch (IOException e) {
+                failure = e;
+            }
+        }
+
+        @Override
+        public ParseErrorSink fork() {
+            return new ChunkSink();
+        }
+
+        @Override
+        public void join(ParseErrorSink chunk, int linesBefore) throws IOException {
+            ChunkSink c = (ChunkSink) chunk;
+            if (c.count == 0) return;
+            c.copyTo(out, empty, linesBefore);
+            empty = false;
+            count += c.count;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                out.close();
+            } finally {
+                super.close();
+            }
+        }
+    }
+
+    // Stores "lineNo message\n" records; the file line number is only known on join.
+    // Messages come from readLine() input, so they hold no line breaks.
+    private static final class ChunkSink extends ParseErrorSink {
+        private final StringBuilder buffer = new StringBuilder();
+        private Path spill;
+        private Writer spillOut;
+
+        @Override
+        protected void accept(int lineNo, Category category, String field, String message) {
+            if (failure != null) return;
+            buffer.append(lineNo).append(' ').append(message).append('\n');
+            if (buffer.length() >= CHUNK_BUFFER) {
+                try {
+                    spill();
+                } catch (IOException e) {
+                    failure = e;
+                }
+            }
+        }
+
+        private void spill() throws IOException {
+            if (spillOut == null) {
+                spill = Files.createTempFile("parse-errors", ".log");
+                spillOut = newWriter(spill);
+            }
+            spillOut.append(buffer);
+            buffer.setLength(0);
+        }
+
+        // Writes the records as log lines, each after a separator unless it is the first of the log
+        void copyTo(Writer out, boolean first, int linesBefore) throws IOException {
+            if (failure != null) throw failure;
+            if (spillOut != null) {
+                spill();
+                spillOut.close();
+                spillOut = null;
+            }
+            try (BufferedReader in = spill != null
+                    ? Files.newBufferedReader(spill, StandardCharsets.UTF_8)
+                    : new BufferedReader(new StringReader(buffer.toString()))) {
+                String record;
+                while ((record = in.readLine()) != null) {
+                    int space = record.indexOf(' ');
+                    if (!first) out.write(SEPARATOR);
+                    first = false;
+                    out.write("Line ");
+                    out.write(Integer.toString(linesBefore + Integer.parseInt(record, 0, space, 10)));
+                    out.write(": ");
+                    out.write(record, space + 1, record.length() - space - 1);
+                }
+            }
+            buffer.setLength(0);
+            deleteSpill();
+        }
+
+        private void deleteSpill() throws IOException {
+            if (spill != null) {
+                Files.deleteIfExists(spill);
+                spill = null;
+            }
+        }
+
+        // Only needed when the chunk is not joined
+        @Override
+        public void close() throws IOException {
+            if (spillOut != null) {
+                spillOut.close();
+                spillOut = null;
+            }
+            deleteSpill();
+        }
+    }
+
+    private static final class SummarySink extends Forkable {
+        private final String path;   // null for a chunk
+        private final int samples;
+        private final MyMap<String, Group> groups = new MyMap<>();
+
+        SummarySink(String path, int samples) {
+            if (samples < 0) throw new IllegalArgumentException("samples must be >= 0");
+            this.path = path;
+            this.samples = samples;
+        }
+
+        @Override
+        protected void accept(int lineNo, Category category, String field, String message) {
+            Group g = group(category, field);
+            g.count++;
+            if (g.lines.size() < samples) {
+                g.lines.add(lineNo);
+                g.messages.add(message);
+            }
+        }
+
+        private Group group(Category category, String field) {
+            String key = category.name() + ' ' + field;
+            Group g = groups.get(key);
+            if (g == null) {
+                g = new Group(key);
+                groups.put(key, g);
+            }
+            return g;
+        }
+
+        @Override
+        public ParseErrorSink fork() {
+            return new SummarySink(null, samples);
+        }
+
+        @Override
+        public void join(ParseErrorSink chunk, int linesBefore) {
+            SummarySink c = (SummarySink) chunk;
+            for (Group from : c.groups.values()) {
+                Group g = groups.get(from.key);
+                if (g == null) {
+                    g = new Group(from.key);
+                    groups.put(from.key, g);
+                }
+                g.count += from.count;
+                for (int i = 0; i < from.lines.size() && g.lines.size() < samples; i++) {
+                    g.lines.add(linesBefore + from.lines.get(i));
+                    g.messages.add(from.messages.get(i));
+                }
+            }
+            count += c.count;
+        }
+
+        // Most frequent first
+        @Override
+        public void close() throws IOException {
+            if (path == null) return;
+            Group[] sorted = new Group[groups.size()];
+            int n = 0;
+            for (Group g : groups.values()) {
+                sorted[n++] = g;
+            }
+            Arrays.sort(sorted, (a, b) -> a.count != b.count ? Long.compare(b.count, a.count) : a.key.compareTo(b.key));
+            MyList<String> lines = new MyList<>();
+            lines.add("Parse errors: " + count);
+            for (Group g : sorted) {
+                lines.add(g.key + ": " + g.count);
+                for (int i = 0; i < g.lines.size(); i++) {
+                    lines.add("  " + format(g.lines.get(i), g.messages.get(i)));
+                }
+            }
+            FileTextUtils.writeLines(lines, path);
+        }
+
+        private static final class Group {
+            final String key;
+            long count;
+            final MyList<Integer> lines = new MyList<>();
+            final MyList<String> messages = new MyList<>();
+
+            Group(String key) {
+                this.key = key;
+            }
+        }
+    }
+
+    private static final class ConsumerSink extends ParseErrorSink {
+        private final Consumer<String> lines;
+
+        ConsumerSink(Consumer<String> lines) {
+            this.lines = lines;
+        }
+
+        @Override
+        protected void accept(int lineNo, Category category, String field, String message) {
+            lines.accept(format(lineNo, message));
+        }
+    }
+}
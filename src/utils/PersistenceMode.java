@@ -0,0 +1,7 @@
+package utils;
+
+public enum PersistenceMode {
+    FULL_REWRITE,   // every change rewrites the data file
+    JOURNAL,        // every change is appended to the journal, the data file is rewritten on compaction
+    ASYNC           // changes are written by a background thread, a burst of them in one rewrite
+}
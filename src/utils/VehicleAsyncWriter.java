@@ -0,0 +1,167 @@
+package utils;
+
+import collections.MyList;
+import metrics.Counter;
+import metrics.LatencyHistogram;
+import metrics.Metrics;
+
+import java.io.IOException;
+import java.util.function.Supplier;
+
+// Group commit for PersistenceMode.ASYNC. A change only bumps a counter; the writer thread
+// rewrites the data file once maxPending changes are waiting or maxDelayMillis after the
+// first of them, whichever comes first, so a burst of changes costs one write. The lines
+// come from snapshot, called on the writer thread; it has to lock out concurrent changes
+// itself. They go to a temp file that is then renamed over the data file. After a failed
+// write the next try waits RETRY_MIN_NANOS, doubling up to RETRY_MAX_NANOS.
+class VehicleAsyncWriter {
+    private static final LatencyHistogram WRITE_TIMES = Metrics.histogram("persist.async");
+    private static final Counter WRITTEN_CHANGES = Metrics.counter("persist.async.changes");
+    private static final long RETRY_MIN_NANOS = 100_000_000L;
+    private static final long RETRY_MAX_NANOS = 10_000_000_000L;
+
+    private final String path;
+    private final Supplier<MyList<String>> snapshot;
+    private final int maxPending;
+    private final long maxDelayNanos;
+    private final Thread thread;
+
+    private final Object lock = new Object();
+    private long changes;          // changes so far
+    private long written;          // changes in the data file
+    private long flushTarget;      // changes a flush() is waiting for
+    private long firstPendingAt;   // nanoTime of the oldest change not yet written
+    private IOException failure;   // of the last write, until a flush() reports it
+    private long retryDelay;       // nanos, 0 while the last write succeeded
+    private long retryAt;          // nanoTime before which a failed write is not retried
+    private boolean closed;
+
+    VehicleAsyncWriter(String path, Supplier<MyList<String>> snapshot, int maxPending, long maxDelayMillis) {
+        if (maxPending <= 0 || maxDelayMillis < 0)
+            throw new IllegalArgumentException("maxPending must be > 0 and maxDelayMillis >= 0");
+        this.path = path;
+        this.snapshot = snapshot;
+        this.maxPending = maxPending;
+        this.maxDelayNanos = maxDelayMillis * 1_000_000;
+        this.thread = new Thread(this::writeLoop, "vehicle-writer");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    void changed() {
+        synchronized (lock) {
+            if (changes == written) {
+                firstPendingAt = System.nanoTime();
+            }
+            changes++;
+            if (changes - written == 1 || changes - written >= maxPending) {
+                lock.notifyAll();
+            }
+        }
+    }
+
+    // Waits until every change made before the call is in the data file
+    void flush() throws IOException {
+        synchronized (lock) {
+            long target = changes;
+            flushTarget = Math.max(flushTarget, target);
+            lock.notifyAll();
+            try {
+                while (written < target && failure == null && thread.isAlive()) {
+                    lock.wait();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while flushing " + path);
+            }
+            if (failure != null) {
+                IOException f = failure;
+                failure = null;
+                throw f;
+            }
+        }
+    }
+
+    // Flushes and stops the writer thread; the thread is stopped even if the flush fails
+    void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            synchronized (lock) {
+                closed = true;
+                lock.notifyAll();
+            }
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void writeLoop() {
+        while (true) {
+            long target;
+            synchronized (lock) {
+                try {
+                    while (!dueLocked()) {
+                        if (closed) return;
+                        if (changes == written) {
+                            lock.wait();
+                        } else {
+                            long now = System.nanoTime();
+                            long wakeAt = retrying(now) ? retryAt : firstPendingAt + maxDelayNanos;
+                            long wait = wakeAt - now;
+                            lock.wait(Math.max(1, (wait + 999_999) / 1_000_000));
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    return;
+                }
+                target = changes;
+            }
+
+            long start = System.nanoTime();
+            IOException error = null;
+            try {
+                // changes made after target may be in the snapshot too; they are written again later
+                FileTextUtils.writeLinesAtomically(snapshot.get(), path);
+            } catch (IOException e) {
+                error = e;
+                System.err.println("Ошибка записи файла: " + e.getMessage());
+            }
+            WRITE_TIMES.recordSince(start);
+
+            synchronized (lock) {
+                if (error == null) {
+                    WRITTEN_CHANGES.add(target - written);
+                    written = target;
+                    retryDelay = 0;
+                } else {
+                    failure = error;
+                    flushTarget = written;
+                    retryDelay = retryDelay == 0 ? RETRY_MIN_NANOS : Math.min(2 * retryDelay, RETRY_MAX_NANOS);
+                    retryAt = System.nanoTime() + retryDelay;
+                }
+                if (changes > written) {
+                    firstPendingAt = System.nanoTime();
+                }
+                lock.notifyAll();
+            }
+        }
+    }
+
+    private boolean dueLocked() {
+        long pending = changes - written;
+        if (pending == 0) return false;
+        if (retrying(System.nanoTime())) return false;
+        return pending >= maxPending
+                || flushTarget > written
+                || System.nanoTime() - firstPendingAt >= maxDelayNanos;
+    }
+
+    // Whether a failed write is still backing off at now
+    private boolean retrying(long now) {
+        return retryDelay > 0 && retryAt - now > 0;
+    }
+}
@@ -1,18 +1,47 @@
 package utils;
 
+import collections.CopyOnWriteMyList;
+import collections.LongIntMyMap;
+import collections.LongMyMap;
+import collections.MyIndexedCollection;
 import collections.MyList;
-import collections.MyMap;
 import factory.AbstractVehicle;
+import factory.EpochDays;
 import factory.VehicleFactory;
 import factory.VehicleType;
+import metrics.LatencyHistogram;
+import metrics.Metrics;
 
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
-import java.util.Date;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
 import java.util.Scanner;
 
 public class VehicleConsoleCrudManager {
+    private static final int COMPACT_EVERY = 1000;
+    // PersistenceMode.ASYNC writes once this many changes wait, or this long after the first
+    private static final int ASYNC_MAX_PENDING = 1000;
+    private static final long ASYNC_MAX_DELAY_MILLIS = 200;
+    private static final int MIN_TOMBSTONES_TO_PURGE = 64;
+    public static final int DEFAULT_BATCH_SIZE = 10_000;
+    private static final LatencyHistogram ADD_TIMES = Metrics.histogram("crud.add");
+    private static final LatencyHistogram UPDATE_TIMES = Metrics.histogram("crud.update");
+    private static final LatencyHistogram DELETE_TIMES = Metrics.histogram("crud.delete");
+    private static final LatencyHistogram ADD_BATCH_TIMES = Metrics.histogram("crud.addBatch");
+    private static final LatencyHistogram DELETE_BATCH_TIMES = Metrics.histogram("crud.deleteBatch");
+    private static final LatencyHistogram PERSIST_TIMES = Metrics.histogram("persist");
+    private static final LatencyHistogram SERIALIZE_TIMES = Metrics.histogram("persist.serialize");
+    private static final LatencyHistogram COMPACT_TIMES = Metrics.histogram("journal.compact");
 
     private final VehicleDataProcessor dataProcessor = new VehicleDataProcessor();
     private final SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd");
@@ -20,15 +49,74 @@ public class VehicleConsoleCrudManager {
 
     private final String dataFile;
     private final String logFile;
+    private final String snapshotFile;
+    private final VehicleJournal journal;
+    private final VehicleAsyncWriter asyncWriter;
+    // Held while vehicles is changed, and by the async writer while it serializes them
+    private final Object storeLock = new Object();
 
-    private final MyList<AbstractVehicle> vehicles;
-    private final MyMap<Long, AbstractVehicle> vehicleIndex = new MyMap<>();
+    private final MyIndexedCollection<AbstractVehicle> vehicles;
+    // id -> position in vehicles of its current vehicle, the last one added with that id.
+    // The indexes keep ids only and look vehicles up through it, so with a VehicleTable
+    // store no vehicle object is kept per row.
+    private final LongIntMyMap slots;
+    private final boolean stableOrder;
+    private int tombstones;
+    // id -> number of older rows of that id still in the store, for ids that have any
+    private final LongIntMyMap shadowed = new LongIntMyMap();
+    private final VehicleIndexes indexes = new VehicleIndexes(this::findVehicle);
+    private final VehicleQueryEngine queryEngine;
+    // Set while a batch runs: changes are written out when the batch is committed
+    private boolean deferWrites;
+    private boolean dirty;
+    // With PersistenceMode.ASYNC the snapshot is dropped before the first write and not
+    // taken again until the next start
+    private boolean snapshotDropped;
 
     public VehicleConsoleCrudManager(String dataFile, String logFile) throws IOException {
+        this(dataFile, logFile, PersistenceMode.FULL_REWRITE);
+    }
+
+    public VehicleConsoleCrudManager(String dataFile, String logFile, PersistenceMode mode) throws IOException {
+        this(dataFile, logFile, mode, new MyList<>());
+    }
+
+    // store is an empty MyList or VehicleTable that will hold the vehicles
+    public VehicleConsoleCrudManager(String dataFile, String logFile, PersistenceMode mode,
+                                     MyIndexedCollection<AbstractVehicle> store) throws IOException {
+        this(dataFile, logFile, mode, store, false);
+    }
+
+    // A delete moves the last vehicle into the freed position. With stableOrder it leaves a
+    // null in the store instead, and the nulls are purged once they make up a quarter of it
+    // or before the store is written out; the order of the others is kept.
+    public VehicleConsoleCrudManager(String dataFile, String logFile, PersistenceMode mode,
+                                     MyIndexedCollection<AbstractVehicle> store, boolean stableOrder) throws IOException {
         this.dataFile = dataFile;
         this.logFile = logFile;
-        this.vehicles = dataProcessor.readVehicles(dataFile, logFile);
+        this.snapshotFile = dataFile + ".snapshot";
+        this.vehicles = store;
+        this.stableOrder = stableOrder;
+        loadVehicles();
+        this.slots = new LongIntMyMap(Math.max(16, 2 * vehicles.size() + 1), 0.5f);
         rebuildIndex();
+        this.queryEngine = new VehicleQueryEngine(this::currentVehicles, indexes);
+        this.journal = mode == PersistenceMode.JOURNAL ? new VehicleJournal(dataFile + ".journal", dataFile) : null;
+        this.asyncWriter = mode == PersistenceMode.ASYNC
+                ? new VehicleAsyncWriter(dataFile, this::snapshotLines, ASYNC_MAX_PENDING, ASYNC_MAX_DELAY_MILLIS)
+                : null;
+        if (journal != null) {
+            replayJournal();
+        }
+        registerGauges();
+    }
+
+    private void registerGauges() {
+        Metrics.gauge("store.size", vehicles::size);
+        Metrics.gauge("store.tombstones", () -> tombstones);
+        Metrics.gauge("index.size", slots::size);
+        Metrics.gauge("index.capacity", slots::capacity);
+        Metrics.gauge("index.loadFactor", () -> (double) slots.size() / slots.capacity());
     }
 
     public void run() {
@@ -49,6 +137,12 @@ public class VehicleConsoleCrudManager {
                 case "4":
                     listVehicles();
                     break;
+                case "5":
+                    queryVehicles();
+                    break;
+                case "6":
+                    showMetrics();
+                    break;
                 case "0":
                     exit = true;
                     break;
@@ -56,6 +150,7 @@ public class VehicleConsoleCrudManager {
                     System.out.println("Неизвестная команда. Повторите ввод.");
             }
         }
+        close();
     }
 
     private void showMenu() {
@@ -64,45 +159,290 @@ public class VehicleConsoleCrudManager {
         System.out.println("2) Обновить транспорт");
         System.out.println("3) Удалить транспорт");
         System.out.println("4) Показать все (через итераторы)");
+        System.out.println("5) Запрос");
+        System.out.println("6) Метрики");
         System.out.println("0) Выход");
         System.out.print("Ваш выбор: ");
     }
 
     public void addVehicle() {
         AbstractVehicle vehicle = promptVehicle(null);
-        vehicles.add(vehicle);
-        vehicleIndex.put(vehicle.getId(), vehicle);
-        persist();
+        insertVehicle(vehicle);
+        recordChange(VehicleJournal.ADD, vehicle);
         System.out.println("Транспорт добавлен.");
     }
 
     public void updateVehicle() {
         long id = promptLong("ID для обновления: ");
-        if (!vehicleIndex.containsKey(id)) {
+        AbstractVehicle existing = findVehicle(id);
+        if (existing == null) {
             System.out.println("Транспорт с таким ID не найден.");
             return;
         }
-        AbstractVehicle updated = promptVehicle(vehicleIndex.get(id));
+        AbstractVehicle updated = promptVehicle(existing);
         replaceVehicle(id, updated);
+        recordChange(VehicleJournal.UPDATE, updated);
         System.out.println("Транспорт обновлён.");
     }
 
     public void deleteVehicle() {
         long id = promptLong("ID для удаления: ");
-        if (!vehicleIndex.containsKey(id)) {
+        if (!slots.containsKey(id)) {
             System.out.println("Транспорт с таким ID не найден.");
             return;
         }
-        AbstractVehicle target = vehicleIndex.get(id);
-        for (int i = 0; i < vehicles.size(); i++) {
-            if (vehicles.get(i).getId() == id) {
-                vehicles.remove(i);
-                break;
+        removeVehicle(id);
+        recordDelete(id);
+        System.out.println("Транспорт удалён.");
+    }
+
+    // Adds a whole batch with one store grow and, without a journal, one rewrite of the file
+    public void addVehicles(MyList<AbstractVehicle> batch) {
+        long start = System.nanoTime();
+        synchronized (storeLock) {
+            if (vehicles instanceof MyList) {
+                ((MyList<AbstractVehicle>) vehicles).addAll(batch);
+            } else if (vehicles instanceof CopyOnWriteMyList) {
+                ((CopyOnWriteMyList<AbstractVehicle>) vehicles).addAll(batch);
+            } else {
+                batch.forEach(vehicles::add);
             }
         }
-        vehicleIndex.remove(id);
-        persist();
-        System.out.println("Транспорт удалён.");
+        for (int i = 0; i < batch.size(); i++) {
+            AbstractVehicle v = batch.get(i);
+            AbstractVehicle old = findVehicle(v.getId());
+            if (old != null) {
+                indexes.remove(old);
+                shadowed.put(v.getId(), shadowed.get(v.getId(), 0) + 1);
+            }
+            slots.put(v.getId(), vehicles.size() - batch.size() + i);
+            indexes.add(v);
+        }
+        ADD_BATCH_TIMES.recordSince(start);
+        if (journal == null) {
+            persistChange();
+            return;
+        }
+        batch.forEach(v -> recordChange(VehicleJournal.ADD, v));
+    }
+
+    // Deletes every vehicle with one of the ids in a single pass over the store, older rows
+    // of the ids included, as deleteVehicle does; unknown ids are ignored. Returns how many ids were found.
+    public int deleteVehicles(long... ids) {
+        long start = System.nanoTime();
+        LongMyMap<AbstractVehicle> removed = new LongMyMap<>();
+        for (long id : ids) {
+            AbstractVehicle old = findVehicle(id);
+            if (old != null) {
+                indexes.remove(old);
+                slots.remove(id);
+                removed.put(id, old);
+            }
+        }
+        if (removed.isEmpty()) {
+            return 0;
+        }
+        synchronized (storeLock) {
+            vehicles.removeIf(v -> v == null || removed.containsKey(v.getId()));
+        }
+        tombstones = 0;
+        reslot();
+        DELETE_BATCH_TIMES.recordSince(start);
+        if (journal == null) {
+            persistChange();
+        } else {
+            var it = removed.keyIterator();
+            while (it.hasNext()) {
+                recordDelete(it.nextLong());
+            }
+        }
+        return removed.size();
+    }
+
+    // Runs the commands of a file, or of stdin for "-", printing through a buffer to stdout.
+    // stdin is left open for the console.
+    public long runBatch(String commandFile, int batchSize) throws IOException {
+        PrintWriter out = new PrintWriter(new BufferedWriter(new OutputStreamWriter(System.out), 1 << 16));
+        try {
+            if ("-".equals(commandFile)) {
+                return runBatch(new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8), 1 << 16),
+                        out, batchSize);
+            }
+            try (BufferedReader in = FileTextUtils.newReader(commandFile)) {
+                return runBatch(in, out, batchSize);
+            }
+        } finally {
+            out.flush();
+        }
+    }
+
+    // Applies commands without prompting, one per line; blank lines and # comments are skipped:
+    //   add TYPE,id,model,power,speed,date,price    (the data file format)
+    //   update TYPE,id,model,power,speed,date,price
+    //   delete id[,id...]
+    //   list
+    //   query <query as in queryVehicles>
+    //   commit
+    // Changes are written out once per batchSize changes, on commit and at the end, instead
+    // of after each one; with PersistenceMode.ASYNC the background writer groups them and the
+    // run ends with a flush. A bad command is reported as "Line N: ...", like a bad vehicle
+    // line, and skipped.
+    // The totals and ops/s go to System.err. Returns the number of commands run.
+    public long runBatch(BufferedReader in, PrintWriter out, int batchSize) throws IOException {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("batchSize must be > 0");
+        }
+        long start = System.nanoTime();
+        long commands = 0;
+        long errors = 0;
+        int commits = 0;
+        int pending = 0;
+        ParseErrorSink log = ParseErrorSink.forEach(out::println);
+        deferWrites = true;
+        if (journal != null) {
+            journal.setAutoFlush(false);
+        }
+        try {
+            int lineNo = 0;
+            String line;
+            while ((line = in.readLine()) != null) {
+                lineNo++;
+                String command = line.trim();
+                if (command.isEmpty() || command.startsWith("#")) continue;
+                commands++;
+                int space = command.indexOf(' ');
+                String name = (space < 0 ? command : command.substring(0, space)).toLowerCase();
+                String args = space < 0 ? "" : command.substring(space + 1).trim();
+                try {
+                    if ("commit".equals(name)) {
+                        if (pending > 0) pending = batchSize;
+                    } else {
+                        pending += applyCommand(name, args, lineNo, out, log);
+                    }
+                } catch (IllegalArgumentException ex) {
+                    errors++;
+                    out.println(ParseErrorSink.format(lineNo, ex.getMessage()));
+                }
+                if (pending >= batchSize) {
+                    commitBatch();
+                    commits++;
+                    pending = 0;
+                }
+            }
+            if (pending > 0) {
+                commitBatch();
+                commits++;
+            }
+            if (asyncWriter != null) {
+                asyncWriter.flush();
+            }
+        } finally {
+            deferWrites = false;
+            if (journal != null) {
+                journal.setAutoFlush(true);
+            }
+            out.flush();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.err.printf("Команд: %d, ошибок: %d, пакетов: %d, время: %.2f с, %.0f оп/с%n",
+                commands, errors, commits, seconds, commands / Math.max(seconds, 1e-9));
+        return commands;
+    }
+
+    // Returns the number of vehicles changed
+    private int applyCommand(String name, String args, int lineNo, PrintWriter out, ParseErrorSink log) {
+        switch (name) {
+            case "add": {
+                AbstractVehicle v = parseCommandVehicle(args, lineNo, log);
+                insertVehicle(v);
+                recordChange(VehicleJournal.ADD, v);
+                return 1;
+            }
+            case "update": {
+                AbstractVehicle v = parseCommandVehicle(args, lineNo, log);
+                if (!slots.containsKey(v.getId())) {
+                    throw new IllegalArgumentException("транспорт с ID " + v.getId() + " не найден");
+                }
+                replaceVehicle(v.getId(), v);
+                recordChange(VehicleJournal.UPDATE, v);
+                return 1;
+            }
+            case "delete": {
+                String[] raw = args.split("[,\\s]+");
+                long[] ids = new long[raw.length];
+                int count = 0;
+                for (String r : raw) {
+                    if (r.isEmpty()) continue;
+                    try {
+                        ids[count++] = Long.parseLong(r);
+                    } catch (NumberFormatException ex) {
+                        throw new IllegalArgumentException("неверный ID '" + r + "'");
+                    }
+                }
+                if (count == 0) {
+                    throw new IllegalArgumentException("не указан ID");
+                }
+                int deleted = 0;
+                for (int i = 0; i < count; i++) {
+                    if (!slots.containsKey(ids[i])) {
+                        out.println(ParseErrorSink.format(lineNo, "транспорт с ID " + ids[i] + " не найден"));
+                        continue;
+                    }
+                    removeVehicle(ids[i]);
+                    recordDelete(ids[i]);
+                    deleted++;
+                }
+                return deleted;
+            }
+            case "list": {
+                Iterator<AbstractVehicle> rows = VehicleTable.scan(vehicles);
+                while (rows.hasNext()) {
+                    AbstractVehicle v = rows.next();
+                    if (v != null) out.println(describe(v));
+                }
+                return 0;
+            }
+            case "query": {
+                VehicleQuery query = VehicleQuery.parse(args);
+                if (query.groupByType()) {
+                    MyList<VehicleQueryEngine.TypeStats> stats = queryEngine.groupByType(query);
+                    for (int i = 0; i < stats.size(); i++) {
+                        out.println(stats.get(i));
+                    }
+                    return 0;
+                }
+                MyList<AbstractVehicle> found = queryEngine.select(query);
+                for (int i = 0; i < found.size(); i++) {
+                    out.println(describe(found.get(i)));
+                }
+                out.println("Найдено: " + found.size());
+                return 0;
+            }
+            default:
+                throw new IllegalArgumentException("неизвестная команда '" + name + "'");
+        }
+    }
+
+    // Parse messages go to the log as they come; a line that gives no vehicle is an error
+    private AbstractVehicle parseCommandVehicle(String args, int lineNo, ParseErrorSink log) {
+        AbstractVehicle v = dataProcessor.parseLine(args, lineNo, log);
+        if (v == null) {
+            throw new IllegalArgumentException("команда пропущена");
+        }
+        return v;
+    }
+
+    private void commitBatch() throws IOException {
+        if (journal != null) {
+            journal.flush();
+        } else if (dirty) {
+            persist();
+        }
+        dirty = false;
+    }
+
+    public void showMetrics() {
+        System.out.print(Metrics.report());
     }
 
     public void listVehicles() {
@@ -110,15 +450,41 @@ public class VehicleConsoleCrudManager {
         var listIterator = vehicles.iterator();
         while (listIterator.hasNext()) {
             AbstractVehicle v = listIterator.next();
+            if (v == null) continue;
             System.out.println(describe(v));
         }
 
-        System.out.println("\n--- Содержимое MyMap (iterator по значениям) ---");
-        var valueIterator = vehicleIndex.values().iterator();
-        while (valueIterator.hasNext()) {
-            AbstractVehicle v = valueIterator.next();
-            System.out.println(describe(v));
+        System.out.println("\n--- Содержимое LongIntMyMap (iterator по ключам) ---");
+        var idIterator = slots.keyIterator();
+        while (idIterator.hasNext()) {
+            System.out.println(describe(findVehicle(idIterator.nextLong())));
+        }
+    }
+
+    public void queryVehicles() {
+        System.out.println("Поля: type=SCOOTER price=100..5000 speed=..120 power=10.. date=2020-01-01..2021-12-31");
+        System.out.println("      order=price|-speed|date|power|id limit=100 group=type");
+        String text = promptString("Запрос", "");
+        VehicleQuery query;
+        try {
+            query = VehicleQuery.parse(text);
+        } catch (IllegalArgumentException ex) {
+            System.out.println(ex.getMessage());
+            return;
         }
+        System.out.println("План: " + queryEngine.explain(query));
+        if (query.groupByType()) {
+            MyList<VehicleQueryEngine.TypeStats> stats = queryEngine.groupByType(query);
+            for (int i = 0; i < stats.size(); i++) {
+                System.out.println(stats.get(i));
+            }
+            return;
+        }
+        MyList<AbstractVehicle> found = queryEngine.select(query);
+        for (int i = 0; i < found.size(); i++) {
+            System.out.println(describe(found.get(i)));
+        }
+        System.out.println("Найдено: " + found.size());
     }
 
     private AbstractVehicle promptVehicle(AbstractVehicle existing) {
@@ -127,7 +493,7 @@ public class VehicleConsoleCrudManager {
         String model = promptString("Модель", existing == null ? "" : existing.getModel());
         double enginePower = promptDouble("Мощность двигателя", existing == null ? 0.0 : existing.getEnginePower());
         int maxSpeed = (int) promptLong("Максимальная скорость", existing == null ? 0 : existing.getMaxSpeed());
-        Date releaseDate = promptDate("Дата выпуска (yyyy-MM-dd)", existing == null ? null : existing.getReleaseDate());
+        int releaseDate = promptDate("Дата выпуска (yyyy-MM-dd)", existing == null ? EpochDays.NONE : existing.getReleaseEpochDay());
         double price = promptDouble("Цена", existing == null ? 0.0 : existing.getPrice());
 
         switch (type) {
@@ -144,53 +510,371 @@ public class VehicleConsoleCrudManager {
         }
     }
 
+    // The vehicle is a copy with a VehicleTable store: changing it does not change the store
+    private AbstractVehicle findVehicle(long id) {
+        int slot = slots.get(id, -1);
+        return slot < 0 ? null : vehicles.get(slot);
+    }
+
+    // One vehicle per id, in store order. With a VehicleTable store the ids are read from
+    // the column and one Row is moved from vehicle to vehicle: do not keep them.
+    private Iterator<AbstractVehicle> currentVehicles() {
+        VehicleTable table = vehicles instanceof VehicleTable ? (VehicleTable) vehicles : null;
+        return new Iterator<AbstractVehicle>() {
+            private int index = -1;
+            private boolean found;
+            private VehicleTable.Row row;
+
+            private boolean isCurrent(int i) {
+                if (table != null) {
+                    return !table.isEmptyRow(i) && slots.get(table.getId(i), -1) == i;
+                }
+                AbstractVehicle v = vehicles.get(i);
+                return v != null && slots.get(v.getId(), -1) == i;
+            }
+
+            @Override
+            public boolean hasNext() {
+                if (!found) {
+                    do {
+                        index++;
+                    } while (index < vehicles.size() && !isCurrent(index));
+                    found = true;
+                }
+                return index < vehicles.size();
+            }
+
+            @Override
+            public AbstractVehicle next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                found = false;
+                if (table == null) {
+                    return vehicles.get(index);
+                }
+                row = row == null ? table.row(index) : row.moveTo(index);
+                return row;
+            }
+        };
+    }
+
     private void replaceVehicle(long id, AbstractVehicle updated) {
+        long start = System.nanoTime();
+        int slot = slots.get(id, -1);
+        if (slot >= 0) {
+            AbstractVehicle old;
+            synchronized (storeLock) {
+                old = vehicles.set(slot, updated);
+            }
+            indexes.remove(old);
+            indexes.add(updated);
+        }
+        UPDATE_TIMES.recordSince(start);
+    }
+
+    // A vehicle with an id already in the store replaces it in the indexes; the old row stays
+    private void insertVehicle(AbstractVehicle vehicle) {
+        long start = System.nanoTime();
+        AbstractVehicle old = findVehicle(vehicle.getId());
+        if (old != null) {
+            indexes.remove(old);
+            shadowed.put(vehicle.getId(), shadowed.get(vehicle.getId(), 0) + 1);
+        }
+        synchronized (storeLock) {
+            vehicles.add(vehicle);
+        }
+        slots.put(vehicle.getId(), vehicles.size() - 1);
+        indexes.add(vehicle);
+        ADD_TIMES.recordSince(start);
+    }
+
+    // Removes the older rows of the id too: a reload would take the last of them as current
+    private void removeVehicle(long id) {
+        long start = System.nanoTime();
+        AbstractVehicle old = findVehicle(id);
+        if (old != null) {
+            indexes.remove(old);
+        }
+        int slot = slots.get(id, -1);
+        slots.remove(id);
+        if (slot >= 0) {
+            boolean rebuild = false;
+            synchronized (storeLock) {
+                if (shadowed.containsKey(id)) {
+                    vehicles.removeIf(v -> v == null || v.getId() == id);
+                    tombstones = 0;
+                    rebuild = true;
+                } else if (stableOrder) {
+                    vehicles.set(slot, null);
+                    tombstones++;
+                } else {
+                    int last = vehicles.size() - 1;
+                    AbstractVehicle tail = vehicles.get(last);
+                    if (slot == last) {
+                        vehicles.remove(last);
+                    } else if (shadowed.containsKey(tail.getId())) {
+                        // swapped in front of an older row of its id, that row would be
+                        // current after a reload
+                        vehicles.remove(slot);
+                        rebuild = true;
+                    } else {
+                        vehicles.set(slot, tail);
+                        slots.put(tail.getId(), slot);
+                        vehicles.remove(last);
+                    }
+                }
+            }
+            if (rebuild) {
+                rebuildSlots();
+            }
+        }
+        if (tombstones >= MIN_TOMBSTONES_TO_PURGE && tombstones * 4 >= vehicles.size()) {
+            purgeTombstones();
+        }
+        DELETE_TIMES.recordSince(start);
+    }
+
+    private void purgeTombstones() {
+        if (tombstones == 0) {
+            return;
+        }
+        synchronized (storeLock) {
+            vehicles.removeIf(v -> v == null);
+        }
+        tombstones = 0;
+        reslot();
+    }
+
+    // After rows were removed from the store. Should an older row of a removed id be left,
+    // it becomes current again, as it would on reload, and the indexes are rebuilt to include it.
+    private void reslot() {
+        int current = slots.size();
+        rebuildSlots();
+        if (slots.size() != current) {
+            reindex();
+        }
+    }
+
+    // The last vehicle with a given id is the current one
+    private void rebuildSlots() {
+        slots.clear();
+        shadowed.clear();
         for (int i = 0; i < vehicles.size(); i++) {
-            if (vehicles.get(i).getId() == id) {
-                vehicles.set(i, updated);
-                break;
+            AbstractVehicle v = vehicles.get(i);
+            if (v != null) {
+                if (slots.containsKey(v.getId())) {
+                    shadowed.put(v.getId(), shadowed.get(v.getId(), 0) + 1);
+                }
+                slots.put(v.getId(), i);
+            }
+        }
+    }
+
+    // Replays the changes as they were made live: an add appends a row even for a known id
+    private void replayJournal() throws IOException {
+        journal.replay(new VehicleJournal.Handler() {
+            @Override
+            public void add(AbstractVehicle v) {
+                insertVehicle(v);
+            }
+
+            @Override
+            public void update(AbstractVehicle v) {
+                if (slots.containsKey(v.getId())) {
+                    replaceVehicle(v.getId(), v);
+                }
+            }
+
+            @Override
+            public void delete(long id) {
+                if (slots.containsKey(id)) {
+                    removeVehicle(id);
+                }
             }
+        }, dataProcessor, ParseErrorSink.forEach(line -> System.err.println("Журнал: " + line)));
+    }
+
+    private void recordChange(String operation, AbstractVehicle v) {
+        if (journal == null) {
+            persistChange();
+            return;
+        }
+        try {
+            journal.append(operation, v, dataProcessor);
+            compactIfNeeded();
+        } catch (IOException e) {
+            System.err.println("Ошибка записи журнала: " + e.getMessage());
+        }
+    }
+
+    private void recordDelete(long id) {
+        if (journal == null) {
+            persistChange();
+            return;
+        }
+        try {
+            journal.appendDelete(id);
+            compactIfNeeded();
+        } catch (IOException e) {
+            System.err.println("Ошибка записи журнала: " + e.getMessage());
+        }
+    }
+
+    private void persistChange() {
+        if (asyncWriter != null) {
+            if (!snapshotDropped) {
+                dropSnapshot();
+                snapshotDropped = true;
+            }
+            asyncWriter.changed();
+            return;
+        }
+        if (deferWrites) {
+            dirty = true;
+            return;
         }
-        vehicleIndex.put(id, updated);
         persist();
     }
 
+    private void compactIfNeeded() throws IOException {
+        if (journal.records() >= COMPACT_EVERY) {
+            compact();
+        }
+    }
+
+    // Folds the journal into the data file
+    private void compact() throws IOException {
+        long start = System.nanoTime();
+        purgeTombstones();
+        dropSnapshot();
+        FileTextUtils.writeLinesAtomically(serializeVehicles(), dataFile);
+        journal.reset();
+        saveSnapshot();
+        COMPACT_TIMES.recordSince(start);
+    }
+
+    // The binary snapshot is used while it matches the data file, otherwise the text is parsed
+    // and a new snapshot is taken
+    private void loadVehicles() throws IOException {
+        if (VehicleSnapshot.isFresh(snapshotFile, dataFile)) {
+            try {
+                VehicleSnapshot.read(snapshotFile, vehicles);
+                return;
+            } catch (IOException e) {
+                System.err.println("Ошибка чтения снимка: " + e.getMessage());
+                vehicles.clear();
+            }
+        }
+        dataProcessor.readVehicles(dataFile, logFile, vehicles);
+        saveSnapshot();
+    }
+
+    private void saveSnapshot() {
+        purgeTombstones();
+        try {
+            VehicleSnapshot.write(vehicles, snapshotFile, dataFile);
+        } catch (IOException e) {
+            System.err.println("Ошибка записи снимка: " + e.getMessage());
+        }
+    }
+
+    // The snapshot is trusted while the data file keeps its size and mtime, which a rewrite
+    // within one mtime tick can keep, so it goes before the data file changes
+    private void dropSnapshot() {
+        try {
+            Files.deleteIfExists(Paths.get(snapshotFile));
+        } catch (IOException e) {
+            System.err.println("Ошибка удаления снимка: " + e.getMessage());
+        }
+    }
+
     private void rebuildIndex() {
-        vehicleIndex.clear();
-        for (int i = 0; i < vehicles.size(); i++) {
-            AbstractVehicle v = vehicles.get(i);
-            vehicleIndex.put(v.getId(), v);
+        rebuildSlots();
+        reindex();
+    }
+
+    private void reindex() {
+        indexes.clear();
+        currentVehicles().forEachRemaining(indexes::add);
+    }
+
+    // Returns once every change so far is in the data file; with PersistenceMode.ASYNC it
+    // waits for the background writer instead of writing on this thread
+    public void flush() {
+        if (asyncWriter == null) {
+            persist();
+            return;
+        }
+        try {
+            asyncWriter.flush();
+        } catch (IOException e) {
+            System.err.println("Ошибка записи файла: " + e.getMessage());
+        }
+    }
+
+    // Called on exit: writes what the background writer still holds and stops it, since its
+    // daemon thread would otherwise drop it
+    public void close() {
+        try {
+            if (asyncWriter != null) {
+                asyncWriter.close();
+            }
+            if (journal != null) {
+                journal.close();
+            }
+        } catch (IOException e) {
+            System.err.println("Ошибка записи файла: " + e.getMessage());
         }
     }
 
     public void persist() {
+        if (asyncWriter != null) {
+            flush();
+            return;
+        }
+        long start = System.nanoTime();
         try {
-            FileTextUtils.writeLines(serializeVehicles(), dataFile);
+            if (journal != null) {
+                compact();
+                return;
+            }
+            purgeTombstones();
+            dropSnapshot();
+            FileTextUtils.writeLinesAtomically(serializeVehicles(), dataFile);
+            saveSnapshot();
             dataProcessor.readVehicles(dataFile, logFile);
         } catch (IOException e) {
             System.err.println("Ошибка записи файла: " + e.getMessage());
+        } finally {
+            PERSIST_TIMES.recordSince(start);
         }
     }
 
-    private MyList<String> serializeVehicles() {
-        MyList<String> lines = new MyList<>(vehicles.size());
-        for (int i = 0; i < vehicles.size(); i++) {
-            lines.add(serializeVehicle(vehicles.get(i)));
+    // Called by the async writer on its own thread; tombstones are skipped, not purged
+    private MyList<String> snapshotLines() {
+        synchronized (storeLock) {
+            MyList<String> lines = new MyList<>(Math.max(vehicles.size(), 1));
+            Iterator<AbstractVehicle> rows = VehicleTable.scan(vehicles);
+            while (rows.hasNext()) {
+                AbstractVehicle v = rows.next();
+                if (v != null) {
+                    lines.add(dataProcessor.serializeVehicle(v));
+                }
+            }
+            return lines;
         }
-        return lines;
     }
 
-    private String serializeVehicle(AbstractVehicle v) {
-        String date = v.getReleaseDate() == null ? "" : dateFormat.format(v.getReleaseDate());
-        return String.join(",",
-                v.getType().name(),
-                String.valueOf(v.getId()),
-                v.getModel(),
-                String.valueOf(v.getEnginePower()),
-                String.valueOf(v.getMaxSpeed()),
-                date,
-                String.valueOf(v.getPrice())
-        );
+    private MyList<String> serializeVehicles() {
+        long start = System.nanoTime();
+        MyList<String> lines = new MyList<>(Math.max(vehicles.size(), 1));
+        Iterator<AbstractVehicle> rows = VehicleTable.scan(vehicles);
+        while (rows.hasNext()) {
+            lines.add(dataProcessor.serializeVehicle(rows.next()));
+        }
+        SERIALIZE_TIMES.recordSince(start);
+        return lines;
     }
 
     private VehicleType promptType(AbstractVehicle existing) {
@@ -244,14 +928,16 @@ public class VehicleConsoleCrudManager {
         }
     }
 
-    private Date promptDate(String label, Date defaultValue) {
+    private int promptDate(String label, int defaultValue) {
         while (true) {
-            String def = defaultValue == null ? "" : dateFormat.format(defaultValue);
+            String def = EpochDays.format(defaultValue);
             System.out.print(label + (def.isEmpty() ? "" : " [" + def + "]") + ": ");
             String raw = scanner.nextLine().trim();
             if (raw.isEmpty()) return defaultValue;
+            int day = EpochDays.parse(raw);
+            if (day != EpochDays.INVALID) return day;
             try {
-                return dateFormat.parse(raw);
+                return EpochDays.fromDate(dateFormat.parse(raw));
             } catch (ParseException ex) {
                 System.out.println("Формат даты yyyy-MM-dd. Попробуйте снова.");
             }
@@ -262,7 +948,7 @@ public class VehicleConsoleCrudManager {
         return v.getType() + " #" + v.getId() + " " + v.getModel()
                 + ", power=" + v.getEnginePower()
                 + ", maxSpeed=" + v.getMaxSpeed()
-                + ", date=" + (v.getReleaseDate() == null ? "null" : dateFormat.format(v.getReleaseDate()))
+                + ", date=" + (v.getReleaseEpochDay() == EpochDays.NONE ? "null" : EpochDays.format(v.getReleaseEpochDay()))
                 + ", price=" + v.getPrice();
     }
 }
\ No newline at end of file
@@ -1,133 +1,327 @@
 package utils;
 
+import collections.MyIndexedCollection;
 import collections.MyList;
 import factory.AbstractVehicle;
+import factory.EpochDays;
 import factory.VehicleFactory;
 import factory.VehicleType;
+import metrics.Counter;
+import metrics.LatencyHistogram;
+import metrics.Metrics;
 
+import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
-import java.util.Date;
+import java.util.Iterator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 public class VehicleDataProcessor {
+    private static final long MIN_CHUNK_SIZE = 1L << 20;
+    private static final int CHUNKS_PER_THREAD = 4;
+    private static final LatencyHistogram READ_TIMES = Metrics.histogram("load.read");
+    private static final LatencyHistogram MAPPED_READ_TIMES = Metrics.histogram("load.mapped");
+    private static final LatencyHistogram PARALLEL_READ_TIMES = Metrics.histogram("load.parallel");
+    private static final Counter LINES_READ = Metrics.counter("load.lines");
+
+    // only for dates that are not plain yyyy-MM-dd, which EpochDays.parse handles
     private final SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd");
+    private final VehicleLineTokenizer tokenizer = new VehicleLineTokenizer();
+    // < 0: every problem goes to the log file; otherwise the log is a summary by category
+    // and field with that many sample lines each (-Dvehicles.log.summary=N)
+    private final int summarySamples;
 
     public VehicleDataProcessor() {
+        this(Integer.getInteger("vehicles.log.summary", -1));
+    }
+
+    public VehicleDataProcessor(int summarySamples) {
+        this.summarySamples = summarySamples;
         dateFormat.setLenient(false);
     }
 
+    // Opened only after the input, so a missing input leaves the previous log in place
+    private ParseErrorSink.Forkable openLog(String logFile) throws IOException {
+        return summarySamples < 0 ? ParseErrorSink.toFile(logFile) : ParseErrorSink.summary(logFile, summarySamples);
+    }
+
     public MyList<AbstractVehicle> readVehicles(String inputFile, String logFile) throws IOException {
-        MyList<String> lines = FileTextUtils.readLines(inputFile);
         MyList<AbstractVehicle> vehicles = new MyList<>();
-        MyList<String> log = new MyList<>();
-
-        int lineNo = 0;
-        for (int i = 0; i < lines.size(); i++) {
-            String rawLine = lines.get(i);
-            lineNo++;
-            String line = rawLine.trim();
-            if (line.isEmpty()) continue;
-
-            String[] parts = line.split(",", -1);
-            if (parts.length != 7) {
-                log.add(formatLog(lineNo, "Expected 7 fields, got " + parts.length + " → SKIPPED: " + line));
-                continue;
+        readVehicles(inputFile, logFile, vehicles);
+        return vehicles;
+    }
+
+    // Appends the parsed vehicles to the given list or table
+    public void readVehicles(String inputFile, String logFile, MyIndexedCollection<AbstractVehicle> vehicles) throws IOException {
+        long start = System.nanoTime();
+
+        try (BufferedReader reader = FileTextUtils.newReader(inputFile);
+             ParseErrorSink log = openLog(logFile)) {
+            int lineNo = 0;
+            String rawLine;
+            while ((rawLine = reader.readLine()) != null) {
+                lineNo++;
+                AbstractVehicle v = parseLine(rawLine, lineNo, log);
+                if (v != null) {
+                    vehicles.add(v);
+                }
             }
+            LINES_READ.add(lineNo);
+        }
 
-            // 1) TYPE
-            VehicleType type;
-            try {
-                type = VehicleType.valueOf(parts[0].trim().toUpperCase());
-            } catch (IllegalArgumentException ex) {
-                log.add(formatLog(lineNo, "Invalid type '" + parts[0] + "' → SKIPPED line"));
-                continue;
+        READ_TIMES.recordSince(start);
+    }
+
+    // Same as readVehicles, but numeric fields are parsed straight from the mapped bytes
+    public MyList<AbstractVehicle> readVehiclesMapped(String inputFile, String logFile) throws IOException {
+        long start = System.nanoTime();
+        MyList<AbstractVehicle> vehicles = new MyList<>();
+
+        try (MappedTextFile file = FileTextUtils.mapLines(inputFile);
+             ParseErrorSink log = openLog(logFile)) {
+            int lineNo = 0;
+            Iterator<CharSequence> lines = file.iterator();
+            while (lines.hasNext()) {
+                CharSequence rawLine = lines.next();
+                lineNo++;
+                AbstractVehicle v = parseLine(rawLine, lineNo, log);
+                if (v != null) {
+                    vehicles.add(v);
+                }
             }
+            LINES_READ.add(lineNo);
+        } catch (UncheckedIOException ex) {
+            throw ex.getCause();
+        }
 
-            // 2) ID
-            long id = parseLong(parts[1], 0L, lineNo, "id", log);
+        MAPPED_READ_TIMES.recordSince(start);
+        return vehicles;
+    }
+
+    public MyList<AbstractVehicle> readVehiclesParallel(String inputFile, String logFile) throws IOException {
+        return readVehiclesParallel(inputFile, logFile, ForkJoinPool.commonPool());
+    }
 
-            // 3) MODEL
-            String model = parts[2].trim();
-            if (model.isEmpty()) {
-                log.add(formatLog(lineNo, "Empty model → set to empty string"));
+    // Same result and log as readVehicles; chunks are parsed on the pool and merged in file order
+    public MyList<AbstractVehicle> readVehiclesParallel(String inputFile, String logFile, ForkJoinPool pool) throws IOException {
+        long start = System.nanoTime();
+        long[] bounds = FileTextUtils.splitOnLines(inputFile, pool.getParallelism() * CHUNKS_PER_THREAD, MIN_CHUNK_SIZE);
+        Chunk[] chunks = new Chunk[bounds.length - 1];
+        for (int i = 0; i < chunks.length; i++) {
+            chunks[i] = new Chunk(bounds[i], bounds[i + 1]);
+        }
+
+        // Each chunk numbers its own lines; the log adds the lines of the chunks before it
+        MyList<AbstractVehicle> vehicles;
+        int linesBefore = 0;
+        try (ParseErrorSink.Forkable log = openLog(logFile)) {
+            try {
+                for (Chunk chunk : chunks) {
+                    chunk.log = log.fork();
+                }
+                invoke(pool, new ChunkTask(inputFile, chunks, 0, chunks.length));
+
+                int vehicleCount = 0;
+                for (Chunk chunk : chunks) {
+                    vehicleCount += chunk.vehicles.size();
+                }
+                vehicles = new MyList<>(Math.max(vehicleCount, 1));
+                for (Chunk chunk : chunks) {
+                    for (int i = 0; i < chunk.vehicles.size(); i++) {
+                        vehicles.add(chunk.vehicles.get(i));
+                    }
+                    log.join(chunk.log, linesBefore);
+                    linesBefore += chunk.lineCount;
+                }
+            } finally {
+                // drops the spill files of chunks that were not joined
+                for (Chunk chunk : chunks) {
+                    if (chunk.log != null) chunk.log.close();
+                }
             }
+        }
+
+        LINES_READ.add(linesBefore);
+        PARALLEL_READ_TIMES.recordSince(start);
+        return vehicles;
+    }
 
-            // 4) ENGINE POWER
-            double enginePower = parseDouble(parts[3], 0.0, lineNo, "enginePower", log);
+    private static void invoke(ForkJoinPool pool, ChunkTask task) throws IOException {
+        try {
+            pool.invoke(task);
+        } catch (UncheckedIOException ex) {
+            throw ex.getCause();
+        }
+    }
 
-            // 5) MAX SPEED
-            int maxSpeed = (int) parseLong(parts[4], 0L, lineNo, "maxSpeed", log);
+    AbstractVehicle parseLine(CharSequence rawLine, int lineNo, ParseErrorSink log) {
+        VehicleLineTokenizer t = tokenizer;
+        if (!t.reset(rawLine)) return null;
+
+        if (t.fieldCount() != VehicleLineTokenizer.FIELD_COUNT) {
+            log.report(lineNo, ParseErrorSink.Category.FIELD_COUNT, "line", "Expected 7 fields, got " + t.fieldCount() + " → SKIPPED: " + t.line());
+            return null;
+        }
 
-            // 6) RELEASE DATE
-            Date releaseDate = null;
-            String ds = parts[5].trim();
-            if (!ds.isEmpty()) {
+        // 1) TYPE
+        VehicleType type = t.parseType(0);
+        if (type == null) {
+            log.report(lineNo, ParseErrorSink.Category.INVALID_TYPE, "type", "Invalid type '" + t.field(0) + "' → SKIPPED line");
+            return null;
+        }
+
+        // 2) ID
+        long id = parseLong(1, 0L, lineNo, "id", log);
+
+        // 3) MODEL
+        String model = t.pooledField(2, VehicleFactory.MODELS);
+        if (model.isEmpty()) {
+            log.report(lineNo, ParseErrorSink.Category.EMPTY_MODEL, "model", "Empty model → set to empty string");
+        }
+
+        // 4) ENGINE POWER
+        double enginePower = parseDouble(3, 0.0, lineNo, "enginePower", log);
+
+        // 5) MAX SPEED
+        int maxSpeed = (int) parseLong(4, 0L, lineNo, "maxSpeed", log);
+
+        // 6) RELEASE DATE
+        int releaseDate = EpochDays.NONE;
+        if (!t.isBlank(5)) {
+            releaseDate = EpochDays.parse(t.source(), t.trimmedStart(5), t.trimmedEnd(5));
+            if (releaseDate == EpochDays.INVALID) {
+                String ds = t.trimmedField(5);
                 try {
-                    releaseDate = dateFormat.parse(ds);
+                    releaseDate = EpochDays.fromDate(dateFormat.parse(ds));
                 } catch (ParseException ex) {
-                    log.add(formatLog(lineNo, "Invalid date '" + ds + "' → set to null"));
+                    releaseDate = EpochDays.NONE;
+                    log.report(lineNo, ParseErrorSink.Category.INVALID_DATE, "releaseDate", "Invalid date '" + ds + "' → set to null");
                 }
-            } else {
-                log.add(formatLog(lineNo, "Empty date → set to null"));
             }
+        } else {
+            log.report(lineNo, ParseErrorSink.Category.EMPTY_DATE, "releaseDate", "Empty date → set to null");
+        }
 
-            // 7) PRICE
-            double price = parseDouble(parts[6], 0.0, lineNo, "price", log);
-
-            AbstractVehicle v;
-            switch (type) {
-                case MOTORCYCLE:
-                    v = VehicleFactory.createMotorcycle(id, model, enginePower, maxSpeed, releaseDate, price);
-                    break;
-                case QUADRICYCLE:
-                    v = VehicleFactory.createQuadricycle(id, model, enginePower, maxSpeed, releaseDate, price);
-                    break;
-                case MOPED:
-                    v = VehicleFactory.createMoped(id, model, enginePower, maxSpeed, releaseDate, price);
-                    break;
-                case SCOOTER:
-                    v = VehicleFactory.createScooter(id, model, enginePower, maxSpeed, releaseDate, price);
-                    break;
-                default:
-                    continue;
-            }
-            vehicles.add(v);
+        // 7) PRICE
+        double price = parseDouble(6, 0.0, lineNo, "price", log);
+
+        switch (type) {
+            case MOTORCYCLE:
+                return VehicleFactory.createMotorcycle(id, model, enginePower, maxSpeed, releaseDate, price);
+            case QUADRICYCLE:
+                return VehicleFactory.createQuadricycle(id, model, enginePower, maxSpeed, releaseDate, price);
+            case MOPED:
+                return VehicleFactory.createMoped(id, model, enginePower, maxSpeed, releaseDate, price);
+            case SCOOTER:
+                return VehicleFactory.createScooter(id, model, enginePower, maxSpeed, releaseDate, price);
+            default:
+                return null;
         }
+    }
 
-        FileTextUtils.writeLines(log, logFile);
-        return vehicles;
+    public String serializeVehicle(AbstractVehicle v) {
+        StringBuilder sb = new StringBuilder(64);
+        sb.append(v.getType().name()).append(',')
+                .append(v.getId()).append(',')
+                .append(v.getModel()).append(',')
+                .append(v.getEnginePower()).append(',')
+                .append(v.getMaxSpeed()).append(',');
+        if (v.getReleaseEpochDay() != EpochDays.NONE) {
+            EpochDays.format(v.getReleaseEpochDay(), sb);
+        }
+        return sb.append(',').append(v.getPrice()).toString();
     }
 
-    private String formatLog(int lineNo, String msg) {
-        return "Line " + lineNo + ": " + msg;
+    private long parseLong(int field, long defaultValue, int lineNo, String name, ParseErrorSink log) {
+        long value = tokenizer.parseLong(field);
+        switch (tokenizer.status()) {
+            case VehicleLineTokenizer.OK:
+                return value;
+            case VehicleLineTokenizer.INVALID:
+                log.report(lineNo, ParseErrorSink.Category.INVALID_NUMBER, name, "Invalid " + name + " '" + tokenizer.field(field) + "' → set to " + defaultValue);
+                return defaultValue;
+            default:
+                log.report(lineNo, ParseErrorSink.Category.PARSE_ERROR, name, "Parse error " + name + " '" + tokenizer.field(field) + "' → set to " + defaultValue);
+                return defaultValue;
+        }
     }
 
-    private long parseLong(String raw, long defaultValue, int lineNo, String field, MyList<String> log) {
-        String cleaned = raw.trim().replaceAll("[^0-9\\-]", "");
-        if (cleaned.isEmpty() || cleaned.equals("-")) {
-            log.add(formatLog(lineNo, "Invalid " + field + " '" + raw + "' → set to " + defaultValue));
-            return defaultValue;
+    private double parseDouble(int field, double defaultValue, int lineNo, String name, ParseErrorSink log) {
+        double value = tokenizer.parseDouble(field);
+        switch (tokenizer.status()) {
+            case VehicleLineTokenizer.OK:
+                return value;
+            case VehicleLineTokenizer.INVALID:
+                log.report(lineNo, ParseErrorSink.Category.INVALID_NUMBER, name, "Invalid " + name + " '" + tokenizer.field(field) + "' → set to " + defaultValue);
+                return defaultValue;
+            default:
+                log.report(lineNo, ParseErrorSink.Category.PARSE_ERROR, name, "Parse error " + name + " '" + tokenizer.field(field) + "' → set to " + defaultValue);
+                return defaultValue;
         }
-        try {
-            return Long.parseLong(cleaned);
-        } catch (NumberFormatException ex) {
-            log.add(formatLog(lineNo, "Parse error " + field + " '" + raw + "' → set to " + defaultValue));
-            return defaultValue;
+    }
+
+    private static class Chunk {
+        final long start;
+        final long end;
+        int lineCount;
+        MyList<AbstractVehicle> vehicles;
+        ParseErrorSink log;
+
+        Chunk(long start, long end) {
+            this.start = start;
+            this.end = end;
         }
     }
 
-    private double parseDouble(String raw, double defaultValue, int lineNo, String field, MyList<String> log) {
-        String cleaned = raw.trim().replaceAll("[^0-9\\.\\-]", "");
-        if (cleaned.isEmpty() || cleaned.equals("-") || cleaned.equals(".")) {
-            log.add(formatLog(lineNo, "Invalid " + field + " '" + raw + "' → set to " + defaultValue));
-            return defaultValue;
+    private static class ChunkTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final String inputFile;
+        private final Chunk[] chunks;
+        private final int from;
+        private final int to;
+
+        ChunkTask(String inputFile, Chunk[] chunks, int from, int to) {
+            this.inputFile = inputFile;
+            this.chunks = chunks;
+            this.from = from;
+            this.to = to;
         }
-        try {
-            return Double.parseDouble(cleaned);
-        } catch (NumberFormatException ex) {
-            log.add(formatLog(lineNo, "Parse error " + field + " '" + raw + "' → set to " + defaultValue));
-            return defaultValue;
+
+        @Override
+        protected void compute() {
+            if (to - from > 1) {
+                int mid = (from + to) >>> 1;
+                invokeAll(new ChunkTask(inputFile, chunks, from, mid),
+                          new ChunkTask(inputFile, chunks, mid, to));
+                return;
+            }
+            try {
+                parseChunk(chunks[from]);
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }
+
+        private void parseChunk(Chunk chunk) throws IOException {
+            // SimpleDateFormat is not thread-safe, so each chunk gets its own processor
+            VehicleDataProcessor processor = new VehicleDataProcessor();
+            chunk.vehicles = new MyList<>();
+            try (BufferedReader reader = FileTextUtils.newReader(inputFile, chunk.start, chunk.end)) {
+                int lineNo = 0;
+                String rawLine;
+                while ((rawLine = reader.readLine()) != null) {
+                    lineNo++;
+                    AbstractVehicle v = processor.parseLine(rawLine, lineNo, chunk.log);
+                    if (v != null) {
+                        chunk.vehicles.add(v);
+                    }
+                }
+                chunk.lineCount = lineNo;
+            }
         }
     }
 }
\ No newline at end of file
@@ -0,0 +1,251 @@
+package utils;
+
+import collections.LongIntMyMap;
+import factory.AbstractVehicle;
+import factory.EpochDays;
+import factory.VehicleType;
+
+import java.util.Date;
+import java.util.Iterator;
+import java.util.NavigableSet;
+import java.util.PrimitiveIterator;
+import java.util.TreeSet;
+import java.util.function.LongFunction;
+import java.util.function.ToDoubleFunction;
+
+// Secondary indexes over the vehicles: the ids of each type and sorted indexes on price,
+// maxSpeed and releaseDate. Only ids and indexed values are kept; a walk looks every
+// vehicle up by id, so a column store keeps no object per row here. The owner must call
+// add/remove for every change; a vehicle must be removed with the same field values it
+// was added with.
+public class VehicleIndexes {
+    private static final VehicleType[] TYPES = VehicleType.values();
+
+    private final LongFunction<AbstractVehicle> lookup;
+    // used as id sets, the values are unused
+    private final LongIntMyMap[] byType;
+    private final RangeIndex price;
+    private final RangeIndex maxSpeed;
+    // epoch days; dates without a value are not indexed
+    private final RangeIndex releaseDate;
+
+    // lookup returns the current vehicle of an indexed id
+    public VehicleIndexes(LongFunction<AbstractVehicle> lookup) {
+        this.lookup = lookup;
+        byType = new LongIntMyMap[TYPES.length];
+        for (int i = 0; i < byType.length; i++) {
+            byType[i] = new LongIntMyMap();
+        }
+        price = new RangeIndex(AbstractVehicle::getPrice, lookup);
+        maxSpeed = new RangeIndex(AbstractVehicle::getMaxSpeed, lookup);
+        releaseDate = new RangeIndex(
+                v -> v.getReleaseEpochDay() == EpochDays.NONE ? Double.NaN : v.getReleaseEpochDay(), lookup);
+    }
+
+    public void add(AbstractVehicle v) {
+        byType[v.getType().ordinal()].put(v.getId(), 0);
+        price.add(v);
+        maxSpeed.add(v);
+        releaseDate.add(v);
+    }
+
+    public void remove(AbstractVehicle v) {
+        byType[v.getType().ordinal()].remove(v.getId());
+        price.remove(v);
+        maxSpeed.remove(v);
+        releaseDate.remove(v);
+    }
+
+    public void clear() {
+        for (LongIntMyMap bucket : byType) {
+            bucket.clear();
+        }
+        price.clear();
+        maxSpeed.clear();
+        releaseDate.clear();
+    }
+
+    public Iterable<AbstractVehicle> byType(VehicleType type) {
+        LongIntMyMap bucket = byType[type.ordinal()];
+        return () -> new Iterator<AbstractVehicle>() {
+            private final PrimitiveIterator.OfLong ids = bucket.keyIterator();
+
+            @Override
+            public boolean hasNext() {
+                return ids.hasNext();
+            }
+
+            @Override
+            public AbstractVehicle next() {
+                return lookup.apply(ids.nextLong());
+            }
+        };
+    }
+
+    public int countByType(VehicleType type) {
+        return byType[type.ordinal()].size();
+    }
+
+    public int size() {
+        int total = 0;
+        for (LongIntMyMap bucket : byType) {
+            total += bucket.size();
+        }
+        return total;
+    }
+
+    public RangeIndex price() {
+        return price;
+    }
+
+    public RangeIndex maxSpeed() {
+        return maxSpeed;
+    }
+
+    public RangeIndex releaseDate() {
+        return releaseDate;
+    }
+
+    public Iterable<AbstractVehicle> priceBetween(double from, double to) {
+        return price.between(from, to);
+    }
+
+    public Iterable<AbstractVehicle> maxSpeedBetween(int from, int to) {
+        return maxSpeed.between(from, to);
+    }
+
+    public Iterable<AbstractVehicle> releasedBetween(Date from, Date to) {
+        return releaseDate.between(EpochDays.fromDate(from), EpochDays.fromDate(to));
+    }
+
+    // Vehicles ordered by one numeric field, ties broken by ascending id in both directions.
+    // Values are compared as doubles, which is exact for int speeds and epoch days.
+    public static class RangeIndex {
+        private final ToDoubleFunction<AbstractVehicle> field;
+        private final LongFunction<AbstractVehicle> lookup;
+        private final TreeSet<Key> tree = new TreeSet<>();
+
+        RangeIndex(ToDoubleFunction<AbstractVehicle> field, LongFunction<AbstractVehicle> lookup) {
+            this.field = field;
+            this.lookup = lookup;
+        }
+
+        void add(AbstractVehicle v) {
+            double value = key(v);
+            if (!Double.isNaN(value)) {
+                tree.add(new Key(value, v.getId()));
+            }
+        }
+
+        void remove(AbstractVehicle v) {
+            double value = key(v);
+            if (!Double.isNaN(value)) {
+                tree.remove(new Key(value, v.getId()));
+            }
+        }
+
+        void clear() {
+            tree.clear();
+        }
+
+        // Adding 0.0 turns -0.0 into 0.0: the query matches both zeros with <= and >=, so
+        // they have to be one key here
+        private double key(AbstractVehicle v) {
+            return field.applyAsDouble(v) + 0.0;
+        }
+
+        public int size() {
+            return tree.size();
+        }
+
+        public double valueOf(AbstractVehicle v) {
+            return field.applyAsDouble(v);
+        }
+
+        // Inclusive on both ends
+        public Iterable<AbstractVehicle> between(double from, double to) {
+            return range(from, to, false);
+        }
+
+        public Iterable<AbstractVehicle> range(double from, double to, boolean descending) {
+            // also empty for NaN bounds, which subSet would reject
+            if (!(from <= to)) {
+                return java.util.Collections::emptyIterator;
+            }
+            NavigableSet<Key> sub = tree.subSet(
+                    new Key(from + 0.0, Long.MIN_VALUE), true, new Key(to + 0.0, Long.MAX_VALUE), true);
+            return descending ? descendingVehicles(sub) : vehicles(sub);
+        }
+
+        public Iterable<AbstractVehicle> ascending() {
+            return vehicles(tree);
+        }
+
+        public Iterable<AbstractVehicle> descending() {
+            return descendingVehicles(tree);
+        }
+
+        private Iterable<AbstractVehicle> vehicles(NavigableSet<Key> keys) {
+            return () -> {
+                Iterator<Key> it = keys.iterator();
+                return new Iterator<AbstractVehicle>() {
+                    @Override
+                    public boolean hasNext() {
+                        return it.hasNext();
+                    }
+
+                    @Override
+                    public AbstractVehicle next() {
+                        return lookup.apply(it.next().id);
+                    }
+                };
+            };
+        }
+
+        // Highest value first; the keys of one value are walked in ascending id order
+        private Iterable<AbstractVehicle> descendingVehicles(NavigableSet<Key> keys) {
+            return () -> new Iterator<AbstractVehicle>() {
+                private double value;
+                private Iterator<Key> group = keys.isEmpty() ? null : group(keys.last().value);
+
+                private Iterator<Key> group(double v) {
+                    value = v;
+                    return keys.subSet(new Key(v, Long.MIN_VALUE), true, new Key(v, Long.MAX_VALUE), true).iterator();
+                }
+
+                @Override
+                public boolean hasNext() {
+                    while (group != null && !group.hasNext()) {
+                        Key below = keys.lower(new Key(value, Long.MIN_VALUE));
+                        group = below == null ? null : group(below.value);
+                    }
+                    return group != null;
+                }
+
+                @Override
+                public AbstractVehicle next() {
+                    if (!hasNext()) {
+                        throw new java.util.NoSuchElementException();
+                    }
+                    return lookup.apply(group.next().id);
+                }
+            };
+        }
+    }
+
+    private static final class Key implements Comparable<Key> {
+        final double value;
+        final long id;
+
+        Key(double value, long id) {
+            this.value = value;
+            this.id = id;
+        }
+
+        @Override
+        public int compareTo(Key other) {
+            int c = Double.compare(value, other.value);
+            return c != 0 ? c : Long.compare(id, other.id);
+        }
+    }
+}
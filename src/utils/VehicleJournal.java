@@ -0,0 +1,159 @@
+package utils;
+
+import factory.AbstractVehicle;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+// Append-only log of CRUD operations on top of the data file. One record per line:
+//   ADD,<vehicle line>   UPDATE,<vehicle line>   DELETE,<id>
+// where <vehicle line> is the usual data file format. The first line is
+//   BASE,<size>,<crc32>
+// of the data file the journal applies to. A compaction rewrites the data file before it
+// deletes the journal; if it stops in between, the header no longer matches and the
+// journal, already folded in, is dropped instead of replayed. Journals without the header
+// are replayed as they are.
+public class VehicleJournal implements Closeable {
+    public static final String ADD = "ADD";
+    public static final String UPDATE = "UPDATE";
+    public static final String DELETE = "DELETE";
+    private static final String BASE = "BASE";
+
+    private final Path path;
+    private final String dataFile;
+    private BufferedWriter writer;
+    private int records;
+    private boolean autoFlush = true;
+
+    public VehicleJournal(String path, String dataFile) {
+        this.path = Paths.get(path);
+        this.dataFile = dataFile;
+    }
+
+    public int records() {
+        return records;
+    }
+
+    // With autoFlush off, appended records stay buffered until flush(), reset() or close()
+    public void setAutoFlush(boolean autoFlush) {
+        this.autoFlush = autoFlush;
+    }
+
+    public void flush() throws IOException {
+        if (writer != null) {
+            writer.flush();
+        }
+    }
+
+    public void append(String operation, AbstractVehicle v, VehicleDataProcessor processor) throws IOException {
+        appendRecord(operation + "," + processor.serializeVehicle(v));
+    }
+
+    public void appendDelete(long id) throws IOException {
+        appendRecord(DELETE + "," + id);
+    }
+
+    private void appendRecord(String record) throws IOException {
+        if (writer == null) {
+            boolean created = !Files.exists(path) || Files.size(path) == 0;
+            writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            if (created) {
+                writer.write(base());
+                writer.newLine();
+            }
+        }
+        writer.write(record);
+        writer.newLine();
+        if (autoFlush) {
+            writer.flush();
+        }
+        records++;
+    }
+
+    // Applies every record of the journal file, in order. Broken records are reported to log and skipped.
+    // A journal written for another data file is reported and deleted.
+    public void replay(Handler handler, VehicleDataProcessor processor, ParseErrorSink log) throws IOException {
+        if (!Files.exists(path)) return;
+        boolean stale = false;
+        try (BufferedReader reader = FileTextUtils.newReader(path.toString())) {
+            int lineNo = 0;
+            String record;
+            while ((record = reader.readLine()) != null) {
+                lineNo++;
+                if (record.trim().isEmpty()) continue;
+                if (record.startsWith(BASE + ",")) {
+                    if (lineNo == 1 && !record.equals(base())) {
+                        log.report(lineNo, ParseErrorSink.Category.JOURNAL, "base", "Journal does not match the data file → SKIPPED journal");
+                        stale = true;
+                        break;
+                    }
+                    continue;
+                }
+                records++;
+                int comma = record.indexOf(',');
+                String operation = comma < 0 ? record.trim() : record.substring(0, comma).trim();
+                String payload = comma < 0 ? "" : record.substring(comma + 1);
+                switch (operation) {
+                    case ADD:
+                    case UPDATE: {
+                        AbstractVehicle v = processor.parseLine(payload, lineNo, log);
+                        if (v == null) break;
+                        if (ADD.equals(operation)) {
+                            handler.add(v);
+                        } else {
+                            handler.update(v);
+                        }
+                        break;
+                    }
+                    case DELETE:
+                        try {
+                            handler.delete(Long.parseLong(payload.trim()));
+                        } catch (NumberFormatException ex) {
+                            log.report(lineNo, ParseErrorSink.Category.JOURNAL, "id", "Invalid journal id '" + payload + "' → SKIPPED");
+                        }
+                        break;
+                    default:
+                        log.report(lineNo, ParseErrorSink.Category.JOURNAL, "operation", "Unknown journal operation '" + operation + "' → SKIPPED");
+                }
+            }
+        }
+        if (stale) {
+            reset();
+        }
+    }
+
+    private String base() throws IOException {
+        return BASE + "," + Files.size(Paths.get(dataFile)) + "," + FileTextUtils.checksum(dataFile);
+    }
+
+    // Called once the data file holds every change: starts an empty journal
+    public void reset() throws IOException {
+        close();
+        Files.deleteIfExists(path);
+        records = 0;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (writer != null) {
+            writer.close();
+            writer = null;
+        }
+    }
+
+    public interface Handler {
+        void add(AbstractVehicle v);
+
+        void update(AbstractVehicle v);
+
+        void delete(long id);
+    }
+}
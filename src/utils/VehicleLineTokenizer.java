@@ -0,0 +1,239 @@
+package utils;
+
+import collections.StringPool;
+import factory.VehicleType;
+
+// Splits one data line into its comma separated fields by offset and parses the
+// numeric fields in place. Mirrors the old split(",")/trim()/replaceAll() pipeline:
+// numbers keep only digits, '-' (and '.' for doubles) before being parsed.
+public class VehicleLineTokenizer {
+    public static final int FIELD_COUNT = 7;
+
+    public static final int OK = 0;
+    public static final int INVALID = 1;      // nothing left after cleanup
+    public static final int PARSE_ERROR = 2;  // cleaned value is not a number
+
+    private static final VehicleType[] TYPES = VehicleType.values();
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10,
+            1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+    private static final long MAX_EXACT_MANTISSA = 1L << 53;
+
+    private final int[] starts = new int[FIELD_COUNT];
+    private final int[] ends = new int[FIELD_COUNT];
+    private final StringBuilder fallback = new StringBuilder();
+
+    private CharSequence line;
+    private int lineStart;
+    private int lineEnd;
+    private int fieldCount;
+    private int status;
+
+    // Returns false for a blank line
+    public boolean reset(CharSequence rawLine) {
+        line = rawLine;
+        int s = 0;
+        int e = rawLine.length();
+        while (s < e && rawLine.charAt(s) <= ' ') s++;
+        while (e > s && rawLine.charAt(e - 1) <= ' ') e--;
+        lineStart = s;
+        lineEnd = e;
+        fieldCount = 0;
+        if (s == e) return false;
+
+        int fieldStart = s;
+        for (int i = s; i < e; i++) {
+            if (rawLine.charAt(i) == ',') {
+                addField(fieldStart, i);
+                fieldStart = i + 1;
+            }
+        }
+        addField(fieldStart, e);
+        return true;
+    }
+
+    private void addField(int start, int end) {
+        if (fieldCount < FIELD_COUNT) {
+            starts[fieldCount] = start;
+            ends[fieldCount] = end;
+        }
+        fieldCount++;
+    }
+
+    public int fieldCount() {
+        return fieldCount;
+    }
+
+    public int status() {
+        return status;
+    }
+
+    public String line() {
+        return line.subSequence(lineStart, lineEnd).toString();
+    }
+
+    public CharSequence source() {
+        return line;
+    }
+
+    public int start(int field) {
+        return starts[field];
+    }
+
+    public int end(int field) {
+        return ends[field];
+    }
+
+    public String field(int field) {
+        return line.subSequence(starts[field], ends[field]).toString();
+    }
+
+    public int trimmedStart(int field) {
+        int s = starts[field];
+        int e = ends[field];
+        while (s < e && line.charAt(s) <= ' ') s++;
+        return s;
+    }
+
+    public int trimmedEnd(int field) {
+        int s = starts[field];
+        int e = ends[field];
+        while (e > s && line.charAt(e - 1) <= ' ') e--;
+        return e;
+    }
+
+    public String trimmedField(int field) {
+        int s = trimmedStart(field);
+        int e = trimmedEnd(field);
+        return s == e ? "" : line.subSequence(s, e).toString();
+    }
+
+    // Trimmed field through the pool, copying the chars only on a miss
+    public String pooledField(int field, StringPool pool) {
+        return pool.get(line, trimmedStart(field), trimmedEnd(field));
+    }
+
+    public boolean isBlank(int field) {
+        return trimmedStart(field) == ends[field];
+    }
+
+    // Case-insensitive match on the trimmed field, null when unknown
+    public VehicleType parseType(int field) {
+        int s = trimmedStart(field);
+        int e = trimmedEnd(field);
+        for (VehicleType type : TYPES) {
+            String name = type.name();
+            if (name.length() != e - s) continue;
+            int i = 0;
+            while (i < name.length() && Character.toUpperCase(line.charAt(s + i)) == name.charAt(i)) i++;
+            if (i == name.length()) return type;
+        }
+        return null;
+    }
+
+    public long parseLong(int field) {
+        int s = starts[field];
+        int e = ends[field];
+        int kept = 0;
+        boolean negative = false;
+        boolean bad = false;
+        long result = 0;
+        long limit = -Long.MAX_VALUE;
+        for (int i = s; i < e; i++) {
+            char c = line.charAt(i);
+            if (c == '-') {
+                if (kept == 0) {
+                    negative = true;
+                    limit = Long.MIN_VALUE;
+                } else {
+                    bad = true;
+                }
+                kept++;
+            } else if (c >= '0' && c <= '9') {
+                kept++;
+                if (bad) continue;
+                // accumulate negatively like Long.parseLong to reach Long.MIN_VALUE
+                int digit = c - '0';
+                if (result < limit / 10) {
+                    bad = true;
+                    continue;
+                }
+                result *= 10;
+                if (result < limit + digit) {
+                    bad = true;
+                    continue;
+                }
+                result -= digit;
+            }
+        }
+        if (kept == 0 || (kept == 1 && negative)) {
+            status = INVALID;
+            return 0L;
+        }
+        if (bad) {
+            status = PARSE_ERROR;
+            return 0L;
+        }
+        status = OK;
+        return negative ? result : -result;
+    }
+
+    public double parseDouble(int field) {
+        int s = starts[field];
+        int e = ends[field];
+        int kept = 0;
+        int digits = 0;
+        int fractionDigits = 0;
+        boolean negative = false;
+        boolean dot = false;
+        boolean bad = false;
+        boolean exact = true;
+        long mantissa = 0;
+        for (int i = s; i < e; i++) {
+            char c = line.charAt(i);
+            if (c == '-') {
+                if (kept == 0) negative = true; else bad = true;
+                kept++;
+            } else if (c == '.') {
+                if (dot) bad = true;
+                dot = true;
+                kept++;
+            } else if (c >= '0' && c <= '9') {
+                kept++;
+                digits++;
+                if (dot) fractionDigits++;
+                if (exact) {
+                    mantissa = mantissa * 10 + (c - '0');
+                    if (mantissa >= MAX_EXACT_MANTISSA) exact = false;
+                }
+            }
+        }
+        if (kept == 0 || (kept == 1 && (negative || dot))) {
+            status = INVALID;
+            return 0.0;
+        }
+        if (bad || digits == 0) {
+            status = PARSE_ERROR;
+            return 0.0;
+        }
+        status = OK;
+        if (exact && fractionDigits < POWERS_OF_TEN.length) {
+            // both operands are exact doubles, so a single division rounds correctly
+            double value = mantissa / POWERS_OF_TEN[fractionDigits];
+            return negative ? -value : value;
+        }
+        return Double.parseDouble(cleaned(s, e));
+    }
+
+    private String cleaned(int s, int e) {
+        fallback.setLength(0);
+        for (int i = s; i < e; i++) {
+            char c = line.charAt(i);
+            if ((c >= '0' && c <= '9') || c == '.' || c == '-') {
+                fallback.append(c);
+            }
+        }
+        return fallback.toString();
+    }
+}
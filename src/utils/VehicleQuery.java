@@ -0,0 +1,231 @@
+package utils;
+
+import factory.AbstractVehicle;
+import factory.EpochDays;
+import factory.VehicleType;
+
+import java.util.Arrays;
+import java.util.Date;
+
+// Ad-hoc query over the vehicles: optional type, inclusive ranges on numeric fields,
+// ordering, limit and grouping by type. Built fluently or parsed from a line such as
+//   type=SCOOTER price=100..5000 speed=..120 date=2020-01-01.. order=-speed limit=100
+// and run by VehicleQueryEngine.
+public class VehicleQuery {
+    public enum Field {
+        ID("id"),
+        PRICE("price"),
+        MAX_SPEED("speed"),
+        RELEASE_DATE("date"),
+        ENGINE_POWER("power");
+
+        private final String key;
+
+        Field(String key) {
+            this.key = key;
+        }
+
+        public String key() {
+            return key;
+        }
+
+        // Dates are epoch days. Missing ones are NaN: they never match a range and sort after every date.
+        // -0.0 is returned as 0.0, so both zeros sort as equal, as in the indexes.
+        public double value(AbstractVehicle v) {
+            switch (this) {
+                case ID:
+                    return v.getId();
+                case PRICE:
+                    return v.getPrice() + 0.0;
+                case MAX_SPEED:
+                    return v.getMaxSpeed();
+                case RELEASE_DATE:
+                    return v.getReleaseEpochDay() == EpochDays.NONE ? Double.NaN : v.getReleaseEpochDay();
+                case ENGINE_POWER:
+                    return v.getEnginePower() + 0.0;
+                default:
+                    throw new IllegalStateException("Неизвестное поле " + this);
+            }
+        }
+
+        // Ties are broken by ascending id in both directions, as the index walks do
+        public int compare(AbstractVehicle a, AbstractVehicle b, boolean descending) {
+            if (this == ID) {
+                int c = Long.compare(a.getId(), b.getId());
+                return descending ? -c : c;
+            }
+            int c = Double.compare(value(a), value(b));
+            if (c != 0) return descending ? -c : c;
+            return Long.compare(a.getId(), b.getId());
+        }
+
+        static Field byKey(String key) {
+            for (Field f : values()) {
+                if (f.key.equalsIgnoreCase(key)) return f;
+            }
+            throw new IllegalArgumentException("Неизвестное поле: " + key);
+        }
+    }
+
+    private static final Field[] FIELDS = Field.values();
+
+    private VehicleType type;
+    private final double[] min = new double[FIELDS.length];
+    private final double[] max = new double[FIELDS.length];
+    private final boolean[] bounded = new boolean[FIELDS.length];
+    private Field orderBy;
+    private boolean descending;
+    private int limit = -1;
+    private boolean groupByType;
+
+    public VehicleQuery() {
+        Arrays.fill(min, Double.NEGATIVE_INFINITY);
+        Arrays.fill(max, Double.POSITIVE_INFINITY);
+    }
+
+    public VehicleQuery type(VehicleType type) {
+        this.type = type;
+        return this;
+    }
+
+    public VehicleQuery range(Field field, double from, double to) {
+        if (Double.isNaN(from) || Double.isNaN(to)) throw new IllegalArgumentException("range bounds must not be NaN");
+        min[field.ordinal()] = from;
+        max[field.ordinal()] = to;
+        bounded[field.ordinal()] = true;
+        return this;
+    }
+
+    public VehicleQuery released(Date from, Date to) {
+        return range(Field.RELEASE_DATE,
+                from == null ? Double.NEGATIVE_INFINITY : EpochDays.fromDate(from),
+                to == null ? Double.POSITIVE_INFINITY : EpochDays.fromDate(to));
+    }
+
+    public VehicleQuery orderBy(Field field, boolean descending) {
+        this.orderBy = field;
+        this.descending = descending;
+        return this;
+    }
+
+    public VehicleQuery limit(int limit) {
+        if (limit < 0) throw new IllegalArgumentException("limit must be >= 0");
+        this.limit = limit;
+        return this;
+    }
+
+    public VehicleQuery groupByType(boolean groupByType) {
+        this.groupByType = groupByType;
+        return this;
+    }
+
+    public VehicleType type() {
+        return type;
+    }
+
+    public boolean hasRange(Field field) {
+        return bounded[field.ordinal()];
+    }
+
+    public double min(Field field) {
+        return min[field.ordinal()];
+    }
+
+    public double max(Field field) {
+        return max[field.ordinal()];
+    }
+
+    public Field orderBy() {
+        return orderBy;
+    }
+
+    public boolean descending() {
+        return descending;
+    }
+
+    // -1 when there is no limit
+    public int limit() {
+        return limit;
+    }
+
+    public boolean groupByType() {
+        return groupByType;
+    }
+
+    public boolean matches(AbstractVehicle v) {
+        if (type != null && v.getType() != type) return false;
+        for (int i = 0; i < FIELDS.length; i++) {
+            if (!bounded[i]) continue;
+            double x = FIELDS[i].value(v);
+            // written so that NaN fails the test
+            if (!(x >= min[i] && x <= max[i])) return false;
+        }
+        return true;
+    }
+
+    public static VehicleQuery parse(String text) {
+        VehicleQuery query = new VehicleQuery();
+        for (String token : text.trim().split("\\s+")) {
+            if (token.isEmpty()) continue;
+            int eq = token.indexOf('=');
+            if (eq <= 0) throw new IllegalArgumentException("Ожидалось поле=значение: " + token);
+            String key = token.substring(0, eq).toLowerCase();
+            String value = token.substring(eq + 1);
+            switch (key) {
+                case "type":
+                    try {
+                        query.type(VehicleType.valueOf(value.toUpperCase()));
+                    } catch (IllegalArgumentException ex) {
+                        throw new IllegalArgumentException("Неверный тип: " + value);
+                    }
+                    break;
+                case "order":
+                    boolean desc = value.startsWith("-");
+                    query.orderBy(Field.byKey(desc ? value.substring(1) : value), desc);
+                    break;
+                case "limit":
+                    try {
+                        query.limit(Integer.parseInt(value));
+                    } catch (NumberFormatException ex) {
+                        throw new IllegalArgumentException("Неверный limit: " + value);
+                    }
+                    break;
+                case "group":
+                    if (!"type".equalsIgnoreCase(value)) {
+                        throw new IllegalArgumentException("Группировка возможна только по type");
+                    }
+                    query.groupByType(true);
+                    break;
+                default: {
+                    Field field = Field.byKey(key);
+                    int dots = value.indexOf("..");
+                    String from = dots < 0 ? value : value.substring(0, dots);
+                    String to = dots < 0 ? value : value.substring(dots + 2);
+                    double low = bound(from, Double.NEGATIVE_INFINITY, field);
+                    double high = bound(to, Double.POSITIVE_INFINITY, field);
+                    if (low > high) {
+                        throw new IllegalArgumentException("Неверный диапазон для " + field.key() + ": " + value);
+                    }
+                    query.range(field, low, high);
+                }
+            }
+        }
+        return query;
+    }
+
+    private static double bound(String raw, double open, Field field) {
+        if (raw.isEmpty()) return open;
+        try {
+            if (field == Field.RELEASE_DATE) {
+                int day = EpochDays.parse(raw);
+                if (day == EpochDays.INVALID) throw new NumberFormatException(raw);
+                return day;
+            }
+            double value = Double.parseDouble(raw);
+            if (Double.isNaN(value)) throw new NumberFormatException(raw);
+            return value;
+        } catch (NumberFormatException ex) {
+            throw new IllegalArgumentException("Неверное значение для " + field.key() + ": " + raw);
+        }
+    }
+}
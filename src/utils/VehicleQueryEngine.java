@@ -0,0 +1,198 @@
+package utils;
+
+import collections.MyList;
+import factory.AbstractVehicle;
+import factory.VehicleType;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.PriorityQueue;
+
+// Runs a VehicleQuery over one vehicle per id. The rows to look at come from the most
+// useful index:
+//   - the sorted index of the order field when that field also has a range, or when there
+//     is a LIMIT and no other range, so rows come out already ordered and LIMIT stops the
+//     walk early;
+//   - otherwise the sorted index of a ranged field (price, speed, then date);
+//   - otherwise the type bucket;
+//   - otherwise every vehicle.
+// Every row is re-checked against the whole query. Results that are not already ordered
+// are sorted, or kept in a bounded heap when there is a LIMIT. The full scan may hand out
+// VehicleTable.Row views; only the rows that are kept are detached.
+public class VehicleQueryEngine {
+    private static final VehicleQuery.Field[] INDEXED = {
+            VehicleQuery.Field.PRICE, VehicleQuery.Field.MAX_SPEED, VehicleQuery.Field.RELEASE_DATE
+    };
+
+    private final Iterable<AbstractVehicle> all;
+    private final VehicleIndexes indexes;
+
+    public VehicleQueryEngine(Iterable<AbstractVehicle> all, VehicleIndexes indexes) {
+        this.all = all;
+        this.indexes = indexes;
+    }
+
+    public MyList<AbstractVehicle> select(VehicleQuery query) {
+        Plan plan = plan(query);
+        VehicleQuery.Field order = query.orderBy();
+        int limit = query.limit();
+        MyList<AbstractVehicle> result = new MyList<>();
+        if (limit == 0) return result;
+
+        if (order == null || plan.ordered) {
+            for (AbstractVehicle v : plan.source) {
+                if (!query.matches(v)) continue;
+                result.add(keep(v));
+                if (result.size() == limit) break;
+            }
+            return result;
+        }
+
+        Comparator<AbstractVehicle> comparator = comparator(order, query.descending());
+        if (limit > 0) {
+            // the head of the heap is the worst row kept so far
+            PriorityQueue<AbstractVehicle> top = new PriorityQueue<>(Math.min(limit, 1024) + 1, comparator.reversed());
+            for (AbstractVehicle v : plan.source) {
+                if (!query.matches(v)) continue;
+                if (top.size() < limit) {
+                    top.add(keep(v));
+                } else if (comparator.compare(v, top.peek()) < 0) {
+                    top.poll();
+                    top.add(keep(v));
+                }
+            }
+            AbstractVehicle[] sorted = top.toArray(new AbstractVehicle[0]);
+            Arrays.sort(sorted, comparator);
+            for (AbstractVehicle v : sorted) {
+                result.add(v);
+            }
+            return result;
+        }
+
+        for (AbstractVehicle v : plan.source) {
+            if (query.matches(v)) result.add(keep(v));
+        }
+        AbstractVehicle[] sorted = new AbstractVehicle[result.size()];
+        for (int i = 0; i < sorted.length; i++) {
+            sorted[i] = result.get(i);
+        }
+        Arrays.sort(sorted, comparator);
+        for (int i = 0; i < sorted.length; i++) {
+            result.set(i, sorted[i]);
+        }
+        return result;
+    }
+
+    // Count and average price per type over the rows that match; ORDER BY and LIMIT are ignored
+    public MyList<TypeStats> groupByType(VehicleQuery query) {
+        VehicleType[] types = VehicleType.values();
+        int[] count = new int[types.length];
+        double[] sum = new double[types.length];
+        for (AbstractVehicle v : plan(query).source) {
+            if (!query.matches(v)) continue;
+            count[v.getType().ordinal()]++;
+            sum[v.getType().ordinal()] += v.getPrice();
+        }
+        MyList<TypeStats> result = new MyList<>();
+        for (int i = 0; i < types.length; i++) {
+            if (count[i] > 0) {
+                result.add(new TypeStats(types[i], count[i], sum[i] / count[i]));
+            }
+        }
+        return result;
+    }
+
+    public String explain(VehicleQuery query) {
+        return plan(query).description;
+    }
+
+    private Plan plan(VehicleQuery query) {
+        VehicleQuery.Field order = query.orderBy();
+        VehicleIndexes.RangeIndex orderIndex = order == null ? null : index(order);
+        if (orderIndex != null && query.hasRange(order)) {
+            return new Plan(orderIndex.range(query.min(order), query.max(order), query.descending()), true,
+                    "индекс " + order.key() + " (упорядочено)");
+        }
+        boolean ranged = false;
+        for (VehicleQuery.Field field : INDEXED) {
+            ranged |= query.hasRange(field);
+        }
+        // with a LIMIT and nothing narrower, walk the order index when it holds every vehicle
+        if (orderIndex != null && !ranged && query.limit() >= 0 && orderIndex.size() == indexes.size()) {
+            return new Plan(query.descending() ? orderIndex.descending() : orderIndex.ascending(), true,
+                    "индекс " + order.key() + " (упорядочено)");
+        }
+        for (VehicleQuery.Field field : INDEXED) {
+            if (query.hasRange(field)) {
+                return new Plan(index(field).between(query.min(field), query.max(field)), false,
+                        "индекс " + field.key());
+            }
+        }
+        if (query.type() != null) {
+            return new Plan(indexes.byType(query.type()), false, "индекс type");
+        }
+        return new Plan(all, false, "полный просмотр");
+    }
+
+    private VehicleIndexes.RangeIndex index(VehicleQuery.Field field) {
+        switch (field) {
+            case PRICE:
+                return indexes.price();
+            case MAX_SPEED:
+                return indexes.maxSpeed();
+            case RELEASE_DATE:
+                return indexes.releaseDate();
+            default:
+                return null;
+        }
+    }
+
+    private static AbstractVehicle keep(AbstractVehicle v) {
+        return v instanceof VehicleTable.Row ? ((VehicleTable.Row) v).detach() : v;
+    }
+
+    private static Comparator<AbstractVehicle> comparator(VehicleQuery.Field field, boolean descending) {
+        return (a, b) -> field.compare(a, b, descending);
+    }
+
+    private static final class Plan {
+        final Iterable<AbstractVehicle> source;
+        final boolean ordered;
+        final String description;
+
+        Plan(Iterable<AbstractVehicle> source, boolean ordered, String description) {
+            this.source = source;
+            this.ordered = ordered;
+            this.description = description;
+        }
+    }
+
+    public static final class TypeStats {
+        private final VehicleType type;
+        private final int count;
+        private final double averagePrice;
+
+        TypeStats(VehicleType type, int count, double averagePrice) {
+            this.type = type;
+            this.count = count;
+            this.averagePrice = averagePrice;
+        }
+
+        public VehicleType getType() {
+            return type;
+        }
+
+        public int getCount() {
+            return count;
+        }
+
+        public double getAveragePrice() {
+            return averagePrice;
+        }
+
+        @Override
+        public String toString() {
+            return type + ": count=" + count + ", avg(price)=" + averagePrice;
+        }
+    }
+}
@@ -0,0 +1,214 @@
+package utils;
+
+import collections.MyIndexedCollection;
+import collections.MyList;
+import collections.MyMap;
+import factory.AbstractVehicle;
+import factory.EpochDays;
+import factory.VehicleFactory;
+import factory.VehicleType;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Date;
+import java.util.Iterator;
+
+// Binary copy of the vehicle list, used to skip text parsing on startup.
+//
+// Layout (big endian):
+//   header:  int magic, int version, long source size, long source mtime,
+//            int record count, int model count
+//   models:  model count x (int byte length, UTF-8 bytes)
+//   records: record count x RECORD_SIZE bytes:
+//            byte type, long id, int model, double enginePower, int maxSpeed,
+//            int release epoch day (EpochDays.NONE for null), double price
+//
+// Version 1 stored the release date as long millis (Long.MIN_VALUE for null); such
+// snapshots are still read.
+//
+// The source size/mtime describe the data file the snapshot was taken from; a snapshot
+// is only used while they still match. Counts, lengths and indices are checked against the
+// file, so a corrupt snapshot fails with an IOException.
+public class VehicleSnapshot {
+    private static final int MAGIC = 0x56454843; // "VEHC"
+    private static final int VERSION = 2;
+    private static final int RECORD_SIZE = 1 + 8 + 4 + 8 + 4 + 4 + 8;
+    private static final int RECORD_SIZE_V1 = 1 + 8 + 4 + 8 + 4 + 8 + 8;
+    private static final long NO_DATE_V1 = Long.MIN_VALUE;
+    private static final int BUFFER_SIZE = RECORD_SIZE_V1 * 4096;
+    private static final VehicleType[] TYPES = VehicleType.values();
+
+    public static boolean isFresh(String snapshotFile, String sourceFile) {
+        Path snapshot = Paths.get(snapshotFile);
+        Path source = Paths.get(sourceFile);
+        if (!Files.isRegularFile(snapshot) || !Files.isRegularFile(source)) return false;
+        try (FileChannel channel = FileChannel.open(snapshot, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(24);
+            if (channel.read(header) < header.capacity()) return false;
+            header.flip();
+            if (header.getInt() != MAGIC) return false;
+            int version = header.getInt();
+            return (version == VERSION || version == 1)
+                    && header.getLong() == Files.size(source)
+                    && header.getLong() == Files.getLastModifiedTime(source).toMillis();
+        } catch (IOException ex) {
+            return false;
+        }
+    }
+
+    public static void write(MyIndexedCollection<AbstractVehicle> vehicles, String snapshotFile, String sourceFile) throws IOException {
+        MyMap<String, Integer> modelIds = new MyMap<>();
+        MyList<String> models = new MyList<>();
+        int[] modelOf = new int[vehicles.size()];
+        Iterator<AbstractVehicle> rows = VehicleTable.scan(vehicles);
+        for (int i = 0; rows.hasNext(); i++) {
+            String model = rows.next().getModel();
+            Integer modelId = modelIds.get(model);
+            if (modelId == null) {
+                modelId = models.size();
+                modelIds.put(model, modelId);
+                models.add(model);
+            }
+            modelOf[i] = modelId;
+        }
+
+        Path target = Paths.get(snapshotFile);
+        Path tmp = Paths.get(snapshotFile + ".tmp");
+        Path source = Paths.get(sourceFile);
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buf = ByteBuffer.allocate(BUFFER_SIZE);
+            buf.putInt(MAGIC);
+            buf.putInt(VERSION);
+            buf.putLong(Files.size(source));
+            buf.putLong(Files.getLastModifiedTime(source).toMillis());
+            buf.putInt(vehicles.size());
+            buf.putInt(models.size());
+
+            for (int i = 0; i < models.size(); i++) {
+                byte[] bytes = models.get(i).getBytes(StandardCharsets.UTF_8);
+                buf = reserve(channel, buf, 4 + bytes.length);
+                buf.putInt(bytes.length);
+                buf.put(bytes);
+            }
+
+            rows = VehicleTable.scan(vehicles);
+            for (int i = 0; rows.hasNext(); i++) {
+                AbstractVehicle v = rows.next();
+                buf = reserve(channel, buf, RECORD_SIZE);
+                buf.put((byte) v.getType().ordinal());
+                buf.putLong(v.getId());
+                buf.putInt(modelOf[i]);
+                buf.putDouble(v.getEnginePower());
+                buf.putInt(v.getMaxSpeed());
+                buf.putInt(v.getReleaseEpochDay());
+                buf.putDouble(v.getPrice());
+            }
+            drain(channel, buf);
+        }
+        Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    public static MyList<AbstractVehicle> read(String snapshotFile) throws IOException {
+        MyList<AbstractVehicle> vehicles = new MyList<>();
+        read(snapshotFile, vehicles);
+        return vehicles;
+    }
+
+    public static void read(String snapshotFile, MyIndexedCollection<AbstractVehicle> vehicles) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(snapshotFile), StandardOpenOption.READ)) {
+            long size = channel.size();
+            ByteBuffer buf = ByteBuffer.allocate(BUFFER_SIZE);
+            buf.flip();
+            buf = require(channel, buf, 32);
+            if (buf.getInt() != MAGIC) throw new IOException("Not a vehicle snapshot: " + snapshotFile);
+            int version = buf.getInt();
+            if (version != VERSION && version != 1) throw new IOException("Unsupported snapshot version " + version);
+            int recordSize = version == 1 ? RECORD_SIZE_V1 : RECORD_SIZE;
+            buf.getLong();
+            buf.getLong();
+            int recordCount = buf.getInt();
+            int modelCount = buf.getInt();
+            if (recordCount < 0 || modelCount < 0 || 32 + 4L * modelCount + (long) recordSize * recordCount > size)
+                throw corrupt("record or model count");
+
+            String[] models = new String[modelCount];
+            for (int i = 0; i < modelCount; i++) {
+                buf = require(channel, buf, 4);
+                int length = buf.getInt();
+                if (length < 0 || length > size) throw corrupt("model length");
+                buf = require(channel, buf, length);
+                models[i] = new String(buf.array(), buf.arrayOffset() + buf.position(), length, StandardCharsets.UTF_8);
+                buf.position(buf.position() + length);
+            }
+
+            for (int i = 0; i < recordCount; i++) {
+                buf = require(channel, buf, recordSize);
+                int typeIndex = buf.get();
+                if (typeIndex < 0 || typeIndex >= TYPES.length) throw corrupt("type " + typeIndex);
+                VehicleType type = TYPES[typeIndex];
+                long id = buf.getLong();
+                int modelIndex = buf.getInt();
+                if (modelIndex < 0 || modelIndex >= modelCount) throw corrupt("model " + modelIndex);
+                String model = models[modelIndex];
+                double enginePower = buf.getDouble();
+                int maxSpeed = buf.getInt();
+                int releaseDate;
+                if (version == 1) {
+                    long millis = buf.getLong();
+                    releaseDate = millis == NO_DATE_V1 ? EpochDays.NONE : EpochDays.fromDate(new Date(millis));
+                } else {
+                    releaseDate = buf.getInt();
+                }
+                double price = buf.getDouble();
+                vehicles.add(VehicleFactory.createVehicle(type, id, model, enginePower, maxSpeed, releaseDate, price));
+            }
+        } catch (RuntimeException ex) {
+            throw new IOException("Corrupt snapshot: " + ex, ex);
+        }
+    }
+
+    private static IOException corrupt(String what) {
+        return new IOException("Corrupt snapshot: bad " + what);
+    }
+
+    // Makes room for n more bytes in a write buffer, flushing or growing it
+    private static ByteBuffer reserve(FileChannel channel, ByteBuffer buf, int n) throws IOException {
+        if (buf.remaining() >= n) return buf;
+        drain(channel, buf);
+        if (buf.capacity() < n) return ByteBuffer.allocate(n);
+        return buf;
+    }
+
+    private static void drain(FileChannel channel, ByteBuffer buf) throws IOException {
+        buf.flip();
+        while (buf.hasRemaining()) {
+            channel.write(buf);
+        }
+        buf.clear();
+    }
+
+    // Makes sure n unread bytes are in a read buffer, refilling or growing it
+    private static ByteBuffer require(FileChannel channel, ByteBuffer buf, int n) throws IOException {
+        if (buf.remaining() >= n) return buf;
+        if (buf.capacity() < n) {
+            ByteBuffer bigger = ByteBuffer.allocate(n);
+            bigger.put(buf);
+            buf = bigger;
+        } else {
+            buf.compact();
+        }
+        while (buf.position() < n) {
+            if (channel.read(buf) < 0) throw new IOException("Truncated snapshot");
+        }
+        buf.flip();
+        return buf;
+    }
+}
@@ -0,0 +1,443 @@
+package utils;
+
+import collections.AbstractMyCollection;
+import collections.MyIndexedCollection;
+import collections.MyList;
+import collections.MyMap;
+import factory.AbstractVehicle;
+import factory.EpochDays;
+import factory.VehicleFactory;
+import factory.VehicleType;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.function.Predicate;
+
+// Column store for vehicles: one primitive array per field instead of one object per
+// vehicle. Models are kept once in a string pool and referenced by number; the pool
+// counts the rows of each model and reuses the number of a model no row has any more.
+// Release dates are stored as epoch days (NO_DATE when missing).
+//
+// get() materializes a detached vehicle; row() returns a view that reads and writes
+// the columns directly and can be moved between rows without allocating. Scans should
+// go through rows() so that no vehicle is created per row.
+// set(i, null) leaves an empty row: get and the iterators return null for it, and the
+// column accessors and row() throw IllegalStateException.
+public class VehicleTable extends AbstractMyCollection implements MyIndexedCollection<AbstractVehicle> {
+    public static final int NO_DATE = EpochDays.NONE;
+
+    private static final int DEFAULT_CAPACITY = 16;
+    private static final byte EMPTY_ROW = -1;
+    private static final VehicleType[] TYPES = VehicleType.values();
+
+    private long[] id;
+    private byte[] type;
+    private int[] model;
+    private double[] enginePower;
+    private int[] maxSpeed;
+    private int[] releaseEpochDay;
+    private double[] price;
+
+    private final MyList<String> models = new MyList<>();
+    private final MyMap<String, Integer> modelIds = new MyMap<>();
+    private int[] modelRows = new int[DEFAULT_CAPACITY];
+    private final MyList<Integer> freeModels = new MyList<>();
+    private int modCount = 0;
+
+    public VehicleTable() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public VehicleTable(int initialCapacity) {
+        if (initialCapacity <= 0) {
+            throw new IllegalArgumentException("initialCapacity must be > 0");
+        }
+        id = new long[initialCapacity];
+        type = new byte[initialCapacity];
+        model = new int[initialCapacity];
+        enginePower = new double[initialCapacity];
+        maxSpeed = new int[initialCapacity];
+        releaseEpochDay = new int[initialCapacity];
+        price = new double[initialCapacity];
+    }
+
+    private void ensureCapacity(int minCapacity) {
+        if (minCapacity > id.length) {
+            int newCapacity = Math.max(id.length << 1, minCapacity);
+            id = Arrays.copyOf(id, newCapacity);
+            type = Arrays.copyOf(type, newCapacity);
+            model = Arrays.copyOf(model, newCapacity);
+            enginePower = Arrays.copyOf(enginePower, newCapacity);
+            maxSpeed = Arrays.copyOf(maxSpeed, newCapacity);
+            releaseEpochDay = Arrays.copyOf(releaseEpochDay, newCapacity);
+            price = Arrays.copyOf(price, newCapacity);
+        }
+    }
+
+    @Override
+    public void add(AbstractVehicle v) {
+        addRow(v.getId(), v.getType(), v.getModel(), v.getEnginePower(), v.getMaxSpeed(),
+                v.getReleaseEpochDay(), v.getPrice());
+    }
+
+    public void addRow(long id, VehicleType type, String model, double enginePower,
+                       int maxSpeed, int releaseEpochDay, double price) {
+        ensureCapacity(size + 1);
+        write(size, id, type, model, enginePower, maxSpeed, releaseEpochDay, price);
+        increaseSize();
+        modCount++;
+    }
+
+    @Override
+    public AbstractVehicle get(int index) {
+        rangeCheck(index);
+        return materialize(index);
+    }
+
+    @Override
+    public AbstractVehicle set(int index, AbstractVehicle v) {
+        rangeCheck(index);
+        AbstractVehicle old = materialize(index);
+        int oldModel = type[index] == EMPTY_ROW ? -1 : model[index];
+        if (v == null) {
+            type[index] = EMPTY_ROW;
+        } else {
+            write(index, v.getId(), v.getType(), v.getModel(), v.getEnginePower(), v.getMaxSpeed(),
+                    v.getReleaseEpochDay(), v.getPrice());
+        }
+        if (oldModel >= 0) {
+            releaseModel(oldModel);
+        }
+        return old;
+    }
+
+    @Override
+    public AbstractVehicle remove(int index) {
+        rangeCheck(index);
+        AbstractVehicle old = materialize(index);
+        if (old != null) {
+            releaseModel(model[index]);
+        }
+        int moved = size - index - 1;
+        if (moved > 0) {
+            System.arraycopy(id, index + 1, id, index, moved);
+            System.arraycopy(type, index + 1, type, index, moved);
+            System.arraycopy(model, index + 1, model, index, moved);
+            System.arraycopy(enginePower, index + 1, enginePower, index, moved);
+            System.arraycopy(maxSpeed, index + 1, maxSpeed, index, moved);
+            System.arraycopy(releaseEpochDay, index + 1, releaseEpochDay, index, moved);
+            System.arraycopy(price, index + 1, price, index, moved);
+        }
+        decreaseSize();
+        modCount++;
+        return old;
+    }
+
+    // The filter sees a Row view that moves on after each test: do not keep it. Every row
+    // is tested before anything moves, so a filter that throws leaves the table unchanged.
+    @Override
+    public boolean removeIf(Predicate<? super AbstractVehicle> filter) {
+        Objects.requireNonNull(filter);
+        Row row = new Row(0);
+        BitSet removed = new BitSet(size);
+        for (int i = 0; i < size; i++) {
+            row.index = i;
+            if (filter.test(type[i] == EMPTY_ROW ? null : row)) {
+                removed.set(i);
+            }
+        }
+        if (removed.isEmpty()) return false;
+        int kept = 0;
+        for (int i = 0; i < size; i++) {
+            if (removed.get(i)) {
+                if (type[i] != EMPTY_ROW) releaseModel(model[i]);
+                continue;
+            }
+            if (kept != i) {
+                id[kept] = id[i];
+                type[kept] = type[i];
+                model[kept] = model[i];
+                enginePower[kept] = enginePower[i];
+                maxSpeed[kept] = maxSpeed[i];
+                releaseEpochDay[kept] = releaseEpochDay[i];
+                price[kept] = price[i];
+            }
+            kept++;
+        }
+        size = kept;
+        modCount++;
+        return true;
+    }
+
+    @Override
+    public void clear() {
+        size = 0;
+        models.clear();
+        modelIds.clear();
+        Arrays.fill(modelRows, 0);
+        freeModels.clear();
+        modCount++;
+    }
+
+    public boolean isEmptyRow(int index) {
+        rangeCheck(index);
+        return type[index] == EMPTY_ROW;
+    }
+
+    // Column access for scans
+    public long getId(int index) {
+        rowCheck(index);
+        return id[index];
+    }
+
+    public VehicleType getType(int index) {
+        rowCheck(index);
+        return TYPES[type[index]];
+    }
+
+    public String getModel(int index) {
+        rowCheck(index);
+        return models.get(model[index]);
+    }
+
+    public double getEnginePower(int index) {
+        rowCheck(index);
+        return enginePower[index];
+    }
+
+    public int getMaxSpeed(int index) {
+        rowCheck(index);
+        return maxSpeed[index];
+    }
+
+    public int getReleaseEpochDay(int index) {
+        rowCheck(index);
+        return releaseEpochDay[index];
+    }
+
+    public double getPrice(int index) {
+        rowCheck(index);
+        return price[index];
+    }
+
+    // Models in use by at least one row
+    public int modelCount() {
+        return modelIds.size();
+    }
+
+    public Row row(int index) {
+        rowCheck(index);
+        return new Row(index);
+    }
+
+    // Detached copies, safe to keep
+    @Override
+    public Iterator<AbstractVehicle> iterator() {
+        return new Itr(false);
+    }
+
+    // One Row moved from row to row: do not keep the returned element
+    public Iterator<AbstractVehicle> rows() {
+        return new Itr(true);
+    }
+
+    // rows() of a table, iterator() of any other collection: for scans that keep nothing
+    public static Iterator<AbstractVehicle> scan(MyIndexedCollection<AbstractVehicle> vehicles) {
+        return vehicles instanceof VehicleTable ? ((VehicleTable) vehicles).rows() : vehicles.iterator();
+    }
+
+    private void write(int index, long id, VehicleType type, String model, double enginePower,
+                       int maxSpeed, int releaseEpochDay, double price) {
+        this.id[index] = id;
+        this.type[index] = (byte) type.ordinal();
+        this.model[index] = modelId(model);
+        this.enginePower[index] = enginePower;
+        this.maxSpeed[index] = maxSpeed;
+        this.releaseEpochDay[index] = releaseEpochDay;
+        this.price[index] = price;
+    }
+
+    // Counts one more row of the model
+    private int modelId(String value) {
+        Integer existing = modelIds.get(value);
+        int id;
+        if (existing != null) {
+            id = existing;
+        } else if (!freeModels.isEmpty()) {
+            id = freeModels.remove(freeModels.size() - 1);
+            models.set(id, value);
+            modelIds.put(value, id);
+        } else {
+            id = models.size();
+            models.add(value);
+            modelIds.put(value, id);
+            if (id == modelRows.length) {
+                modelRows = Arrays.copyOf(modelRows, id << 1);
+            }
+        }
+        modelRows[id]++;
+        return id;
+    }
+
+    // Counts one row of the model less; a model without rows leaves the pool
+    private void releaseModel(int id) {
+        if (--modelRows[id] == 0) {
+            modelIds.remove(models.get(id));
+            models.set(id, null);
+            freeModels.add(id);
+        }
+    }
+
+    private AbstractVehicle materialize(int index) {
+        if (type[index] == EMPTY_ROW) return null;
+        return VehicleFactory.createVehicle(TYPES[type[index]], id[index], models.get(model[index]),
+                enginePower[index], maxSpeed[index], releaseEpochDay[index], price[index]);
+    }
+
+    private void rangeCheck(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+    }
+
+    private void rowCheck(int index) {
+        if (isEmptyRow(index)) {
+            throw new IllegalStateException("Row " + index + " is empty");
+        }
+    }
+
+    private class Itr implements Iterator<AbstractVehicle> {
+        private final Row row;
+        private int cursor = 0;
+        private final int expectedModCount = modCount;
+
+        Itr(boolean flyweight) {
+            this.row = flyweight ? new Row(0) : null;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return cursor < size;
+        }
+
+        @Override
+        public AbstractVehicle next() {
+            if (modCount != expectedModCount) {
+                throw new java.util.ConcurrentModificationException();
+            }
+            if (cursor >= size) {
+                throw new NoSuchElementException();
+            }
+            int index = cursor++;
+            if (row == null || type[index] == EMPTY_ROW) {
+                return materialize(index);
+            }
+            row.moveTo(index);
+            return row;
+        }
+    }
+
+    // Flyweight vehicle bound to one row of the table. The fields inherited from
+    // AbstractVehicle are unused: every accessor goes to the columns.
+    public class Row extends AbstractVehicle {
+        private int index;
+
+        Row(int index) {
+            super(0L, null, null, 0.0, 0, NO_DATE, 0.0);
+            this.index = index;
+        }
+
+        public int index() {
+            return index;
+        }
+
+        // A vehicle with the values of the row now, safe to keep
+        public AbstractVehicle detach() {
+            rowCheck(index);
+            return materialize(index);
+        }
+
+        public Row moveTo(int index) {
+            rowCheck(index);
+            this.index = index;
+            return this;
+        }
+
+        @Override
+        public long getId() {
+            return id[index];
+        }
+
+        @Override
+        public void setId(long value) {
+            id[index] = value;
+        }
+
+        // The row may have been emptied since the view was moved to it
+        @Override
+        public VehicleType getType() {
+            rowCheck(index);
+            return TYPES[type[index]];
+        }
+
+        @Override
+        public void setType(VehicleType value) {
+            type[index] = (byte) value.ordinal();
+        }
+
+        @Override
+        public String getModel() {
+            return models.get(model[index]);
+        }
+
+        @Override
+        public void setModel(String value) {
+            int old = model[index];
+            model[index] = modelId(value);
+            releaseModel(old);
+        }
+
+        @Override
+        public double getEnginePower() {
+            return enginePower[index];
+        }
+
+        @Override
+        public void setEnginePower(double value) {
+            enginePower[index] = value;
+        }
+
+        @Override
+        public int getMaxSpeed() {
+            return maxSpeed[index];
+        }
+
+        @Override
+        public void setMaxSpeed(int value) {
+            maxSpeed[index] = value;
+        }
+
+        @Override
+        public int getReleaseEpochDay() {
+            return releaseEpochDay[index];
+        }
+
+        @Override
+        public void setReleaseEpochDay(int value) {
+            releaseEpochDay[index] = value;
+        }
+
+        @Override
+        public double getPrice() {
+            return price[index];
+        }
+
+        @Override
+        public void setPrice(double value) {
+            price[index] = value;
+        }
+    }
+}